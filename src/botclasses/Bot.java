@@ -0,0 +1,18 @@
+package src.botclasses;
+
+import src.gameclasses.Direction;
+import src.mainclasses.GameBoard;
+
+/**
+ * Strategy which steers the snake instead of the player. A bot is asked for the direction before
+ * every movement and must not change the board it is given.
+ */
+public interface Bot {
+
+    /**
+     * Returns the direction for the next call of GameBoard.try_movement().
+     */
+    Direction next_move(GameBoard game_board);
+
+    String get_name();
+}
@@ -0,0 +1,150 @@
+package src.botclasses;
+
+import java.util.Arrays;
+import src.gameclasses.Direction;
+import src.mainclasses.GameBoard;
+
+/**
+ * Reusable breadth first searches over a GameBoard. The queue and the visited marks are allocated
+ * once per board size; instead of clearing the visited array before every search a generation
+ * counter is increased, so a search costs only the spots it visits and allocates nothing. Edges
+ * wrap around like in GameBoard.try_movement().
+ */
+public class GridSearch {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int width;
+    private int height;
+    private int[] queue = new int[0];
+    /**
+     * visited[i] == generation marks spot i as visited by the current search.
+     */
+    private int[] visited = new int[0];
+    /**
+     * Ordinal of the first Direction taken from the start to reach a spot.
+     */
+    private int[] first_move = new int[0];
+    private int generation;
+    private int last_distance;
+
+    private void prepare(GameBoard game_board) {
+        width = game_board.get_width();
+        height = game_board.get_height();
+        int size = width * height;
+        if (queue.length != size) {
+            queue = new int[size];
+            visited = new int[size];
+            first_move = new int[size];
+            generation = 0;
+        }
+        generation++;
+        if (generation == 0) {
+            Arrays.fill(visited, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Returns the board index next to index in the direction (given as ordinal).
+     */
+    public int neighbor(int index, int direction) {
+        int x = index % width;
+        int y = index / width;
+        switch (DIRECTIONS[direction]) {
+            case DOWN:
+                y = (y + 1) % height;
+                break;
+            case UP:
+                y = (y == 0) ? height - 1 : y - 1;
+                break;
+            case LEFT:
+                x = (x == 0) ? width - 1 : x - 1;
+                break;
+            case RIGHT:
+                x = (x + 1) % width;
+                break;
+        }
+        return y * width + x;
+    }
+
+    private static boolean is_free(GameBoard game_board, int index) {
+        int status = game_board.get_status(index);
+        return status == 0 || status == 3;
+    }
+
+    /**
+     * Searches the shortest path from the head to the closest apple. Returns the ordinal of the
+     * first direction of the path or -1 if no apple can be reached. The length of the path is
+     * available through get_last_distance() afterwards.
+     */
+    public int path_to_apple(GameBoard game_board) {
+        prepare(game_board);
+        int start = game_board.get_head_index();
+        visited[start] = generation;
+        int head = 0;
+        int tail = 0;
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            int next = neighbor(start, d);
+            if (visited[next] != generation && is_free(game_board, next)) {
+                visited[next] = generation;
+                first_move[next] = d;
+                queue[tail++] = next;
+            }
+        }
+        int level_end = tail;
+        int distance = 1;
+        while (head < tail) {
+            if (head == level_end) {
+                level_end = tail;
+                distance++;
+            }
+            int current = queue[head++];
+            if (game_board.get_status(current) == 3) {
+                last_distance = distance;
+                return first_move[current];
+            }
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int next = neighbor(current, d);
+                if (visited[next] != generation && is_free(game_board, next)) {
+                    visited[next] = generation;
+                    first_move[next] = first_move[current];
+                    queue[tail++] = next;
+                }
+            }
+        }
+        last_distance = -1;
+        return -1;
+    }
+
+    public int get_last_distance() {
+        return last_distance;
+    }
+
+    /**
+     * Counts the free spots reachable from start (which itself counts as occupied). The spot
+     * freed is treated as free, e.g. the tail which moves away, -1 for none. The search stops as
+     * soon as limit spots were found.
+     */
+    public int count_reachable(GameBoard game_board, int start, int freed, int limit) {
+        prepare(game_board);
+        visited[start] = generation;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        int count = 0;
+        while (head < tail && count < limit) {
+            int current = queue[head++];
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int next = neighbor(current, d);
+                if (visited[next] != generation
+                    && (next == freed || is_free(game_board, next))) {
+                    visited[next] = generation;
+                    queue[tail++] = next;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
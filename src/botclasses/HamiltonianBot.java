@@ -0,0 +1,310 @@
+package src.botclasses;
+
+import java.util.Arrays;
+import src.gameclasses.Direction;
+import src.gameclasses.Level;
+import src.mainclasses.GameBoard;
+
+/**
+ * Bot which follows a Hamiltonian cycle of the level and therefore only dies once the snake fills
+ * the whole cycle, which makes it the load generator for boards filled with snake. The cycle is
+ * built from 2x2 blocks of spots: every block without a wall is a node, a spanning tree over these
+ * blocks (with wraparound edges) is searched and the cycle walks around the tree. Spots in blocks
+ * with walls are left out, so the cycle covers the level "where possible".
+ * <p>
+ * While the snake is short it takes shortcuts towards the apple, but only to spots which lie
+ * between the head and the tail along the cycle, so the body always stays in cycle order behind
+ * the head. If the snake is not in cycle order (e.g. at the start of some levels) the bot plays
+ * like the PathfindingBot until it is.
+ */
+public class HamiltonianBot implements Bot {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    /**
+     * Spots kept free in front of the tail when taking a shortcut.
+     */
+    private static final int SHORTCUT_MARGIN = 4;
+
+    private final PathfindingBot fallback = new PathfindingBot();
+    private final int[] outcomes = new int[4];
+    private final int[] heads = new int[4];
+
+    private Level cycle_level;
+    private int width;
+    private int height;
+    /**
+     * Position of every spot along the cycle, -1 for spots which are not on the cycle.
+     */
+    private int[] cycle_position;
+    /**
+     * Ordinal of the Direction leading to the next spot of the cycle.
+     */
+    private int[] cycle_direction;
+    private int cycle_length;
+
+    // alignment check
+    private GameBoard last_board;
+    private int last_tick;
+    private boolean aligned;
+
+    @Override
+    public Direction next_move(GameBoard game_board) {
+        if (game_board.level != cycle_level) {
+            build_cycle(game_board);
+        }
+        if (game_board != last_board || game_board.get_ticks() != last_tick + 1 || !aligned) {
+            aligned = check_aligned(game_board);
+        }
+        last_board = game_board;
+        last_tick = game_board.get_ticks();
+
+        int head = game_board.get_head_index();
+        if (!aligned || cycle_position[head] == -1) {
+            return fallback.next_move(game_board);
+        }
+        game_board.evaluate_moves(outcomes, heads);
+        int follow = cycle_direction[head];
+        if (outcomes[follow] == GameBoard.OUTCOME_DIE) {
+            aligned = false;
+            return fallback.next_move(game_board);
+        }
+        if (game_board.get_snake_length() * 2 > cycle_length) {
+            return DIRECTIONS[follow];
+        }
+
+        // shortcuts
+        int to_tail = distance(head, game_board.get_tail_index());
+        int apple = find_apple_distance(game_board, head);
+        int best = follow;
+        int best_distance = 1;
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            if (outcomes[d] == GameBoard.OUTCOME_DIE || cycle_position[heads[d]] == -1) {
+                continue;
+            }
+            int dist = distance(head, heads[d]);
+            if (dist > best_distance && dist < to_tail - SHORTCUT_MARGIN
+                && (apple == -1 || dist <= apple)) {
+                best = d;
+                best_distance = dist;
+            }
+        }
+        return DIRECTIONS[best];
+    }
+
+    @Override
+    public String get_name() {
+        return "Hamiltonian";
+    }
+
+    /**
+     * Distance from one spot to another following the cycle.
+     */
+    private int distance(int from, int to) {
+        return (cycle_position[to] - cycle_position[from] + cycle_length) % cycle_length;
+    }
+
+    /**
+     * Returns the distance along the cycle from the head to the closest apple, -1 if no apple is
+     * on the cycle.
+     */
+    private int find_apple_distance(GameBoard game_board, int head) {
+        int best = -1;
+        for (int i = 0; i < cycle_position.length; i++) {
+            if (game_board.get_status(i) == 3 && cycle_position[i] != -1) {
+                int dist = distance(head, i);
+                if (best == -1 || dist < best) {
+                    best = dist;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks that every snake part is on the cycle and that the parts are in cycle order from
+     * the tail to the head.
+     */
+    private boolean check_aligned(GameBoard game_board) {
+        int tail = game_board.get_tail_index();
+        if (cycle_position[tail] == -1) {
+            return false;
+        }
+        int previous = Integer.MAX_VALUE;
+        for (int i = 0; i < game_board.get_snake_length(); i++) {
+            int part = game_board.get_snake_part(i);
+            if (cycle_position[part] == -1) {
+                return false;
+            }
+            int dist = distance(tail, part);
+            if (i > 0 && dist >= previous) {
+                return false;
+            }
+            previous = dist;
+        }
+        return true;
+    }
+
+    /**
+     * Builds the cycle for the level of the board, starting the spanning tree at the block of
+     * the head, or at the usable block nearest to it if that block has a wall.
+     */
+    private void build_cycle(GameBoard game_board) {
+        Level level = game_board.level;
+        cycle_level = level;
+        width = game_board.get_width();
+        height = game_board.get_height();
+        int block_width = width / 2;
+        int block_height = height / 2;
+        int num_blocks = block_width * block_height;
+
+        // usable blocks are those without walls in the level layout
+        boolean[] usable = new boolean[num_blocks];
+        for (int b = 0; b < num_blocks; b++) {
+            int x = (b % block_width) * 2;
+            int y = (b / block_width) * 2;
+            usable[b] = level.game_board[y][x] != 2 && level.game_board[y][x + 1] != 2
+                && level.game_board[y + 1][x] != 2 && level.game_board[y + 1][x + 1] != 2;
+        }
+
+        // spanning tree by breadth first search, links[b] has a bit per connected direction
+        int[] links = new int[num_blocks];
+        boolean[] in_tree = new boolean[num_blocks];
+        int[] queue = new int[num_blocks];
+        int root = nearest_usable(usable, block_width,
+            Math.min(level.head[0] / 2, block_width - 1),
+            Math.min(level.head[1] / 2, block_height - 1));
+        int queue_head = 0;
+        int queue_tail = 0;
+        if (root != -1) {
+            in_tree[root] = true;
+            queue[queue_tail++] = root;
+        }
+        while (queue_head < queue_tail) {
+            int block = queue[queue_head++];
+            int bx = block % block_width;
+            int by = block / block_width;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int nx = bx;
+                int ny = by;
+                // wrapping around skips the last row or column if it is not in any block
+                boolean skips = false;
+                switch (DIRECTIONS[d]) {
+                    case UP:
+                        ny = (by == 0) ? block_height - 1 : by - 1;
+                        skips = by == 0 && height % 2 != 0;
+                        break;
+                    case DOWN:
+                        ny = (by == block_height - 1) ? 0 : by + 1;
+                        skips = by == block_height - 1 && height % 2 != 0;
+                        break;
+                    case LEFT:
+                        nx = (bx == 0) ? block_width - 1 : bx - 1;
+                        skips = bx == 0 && width % 2 != 0;
+                        break;
+                    case RIGHT:
+                        nx = (bx == block_width - 1) ? 0 : bx + 1;
+                        skips = bx == block_width - 1 && width % 2 != 0;
+                        break;
+                }
+                if (skips) {
+                    continue;
+                }
+                int next = ny * block_width + nx;
+                if (usable[next] && !in_tree[next]) {
+                    in_tree[next] = true;
+                    links[block] |= 1 << d;
+                    links[next] |= 1 << opposite(d);
+                    queue[queue_tail++] = next;
+                }
+            }
+        }
+
+        // walk around the tree: counterclockwise inside a block, leaving it where it is linked
+        cycle_direction = new int[width * height];
+        cycle_position = new int[width * height];
+        Arrays.fill(cycle_position, -1);
+        for (int block = 0; block < num_blocks; block++) {
+            if (!in_tree[block]) {
+                continue;
+            }
+            int x = (block % block_width) * 2;
+            int y = (block / block_width) * 2;
+            int top_left = y * width + x;
+            int top_right = top_left + 1;
+            int bottom_left = top_left + width;
+            int bottom_right = bottom_left + 1;
+            cycle_direction[top_left] = linked(links[block], Direction.LEFT)
+                ? Direction.LEFT.ordinal() : Direction.DOWN.ordinal();
+            cycle_direction[bottom_left] = linked(links[block], Direction.DOWN)
+                ? Direction.DOWN.ordinal() : Direction.RIGHT.ordinal();
+            cycle_direction[bottom_right] = linked(links[block], Direction.RIGHT)
+                ? Direction.RIGHT.ordinal() : Direction.UP.ordinal();
+            cycle_direction[top_right] = linked(links[block], Direction.UP)
+                ? Direction.UP.ordinal() : Direction.LEFT.ordinal();
+        }
+
+        // number the spots along the cycle
+        cycle_length = 0;
+        if (queue_tail > 0) {
+            int start = (root / block_width) * 2 * width + (root % block_width) * 2;
+            int spot = start;
+            do {
+                cycle_position[spot] = cycle_length++;
+                spot = step(spot, cycle_direction[spot]);
+            } while (spot != start);
+        }
+    }
+
+    /**
+     * Returns the usable block closest to the given block, -1 if there is none.
+     */
+    private static int nearest_usable(boolean[] usable, int block_width, int bx, int by) {
+        int best = -1;
+        int best_distance = Integer.MAX_VALUE;
+        for (int b = 0; b < usable.length; b++) {
+            int dist = Math.abs(b % block_width - bx) + Math.abs(b / block_width - by);
+            if (usable[b] && dist < best_distance) {
+                best = b;
+                best_distance = dist;
+            }
+        }
+        return best;
+    }
+
+    private static boolean linked(int links, Direction direction) {
+        return (links & (1 << direction.ordinal())) != 0;
+    }
+
+    private static int opposite(int direction) {
+        switch (DIRECTIONS[direction]) {
+            case UP:
+                return Direction.DOWN.ordinal();
+            case DOWN:
+                return Direction.UP.ordinal();
+            case LEFT:
+                return Direction.RIGHT.ordinal();
+            default:
+                return Direction.LEFT.ordinal();
+        }
+    }
+
+    private int step(int index, int direction) {
+        int x = index % width;
+        int y = index / width;
+        switch (DIRECTIONS[direction]) {
+            case DOWN:
+                y = (y + 1) % height;
+                break;
+            case UP:
+                y = (y == 0) ? height - 1 : y - 1;
+                break;
+            case LEFT:
+                x = (x == 0) ? width - 1 : x - 1;
+                break;
+            case RIGHT:
+                x = (x + 1) % width;
+                break;
+        }
+        return y * width + x;
+    }
+}
@@ -0,0 +1,312 @@
+package src.botclasses;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import src.gameclasses.Direction;
+import src.gameclasses.Settings;
+import src.mainclasses.GameBoard;
+
+/**
+ * Monte Carlo tree search bot using root parallelisation: every worker thread grows its own search
+ * tree from the current state on a private scratch board for the time budget of the move, then
+ * the visit counts of the first moves are summed up and the most visited one is played. The time
+ * budget is half of the delay between two ticks, so the bot can play live.
+ * <p>
+ * The statistics of well visited nodes are kept in a TranspositionTable keyed by
+ * GameBoard.get_hash() when a search ends. A node created later for the same state, by any
+ * worker and usually in the search of the next move, starts with these statistics (at most
+ * MAX_PRIOR_VISITS of them), so the work of the previous move is not thrown away. Rewards count
+ * the points from the root of the search they were gathered in, so these statistics are only an
+ * estimate which the new visits correct.
+ */
+public class MctsBot implements Bot {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    /**
+     * Maximum number of random moves played at the end of a simulation.
+     */
+    private static final int ROLLOUT_DEPTH = 40;
+    private static final double EXPLORATION = 1.0;
+    /**
+     * Nodes with fewer visits are not stored in the transposition table.
+     */
+    private static final int MIN_STORED_VISITS = 8;
+    /**
+     * Upper limit of the visits a new node takes over from the transposition table, so old
+     * statistics are quickly outweighed by the current search.
+     */
+    private static final int MAX_PRIOR_VISITS = 32;
+    /**
+     * Mean rewards are stored as int scores in units of 1 / REWARD_SCALE.
+     */
+    private static final int REWARD_SCALE = 1 << 20;
+    private static final int TABLE_SIZE_LOG2 = 18;
+
+    private final ExecutorService executor;
+    private final int num_workers;
+    private final GameBoard[] scratch_boards;
+    private final PathfindingBot fallback = new PathfindingBot();
+    private final TranspositionTable table = new TranspositionTable(TABLE_SIZE_LOG2);
+    private long time_budget_nanos;
+
+    // throughput
+    private long total_rollouts;
+    private long total_nanos;
+    private double last_rollouts_per_second;
+
+    /**
+     * Creates a bot whose time budget follows the tick speed of the settings. In the game mode
+     * "Speed" the fastest possible delay (80 ms) is assumed.
+     */
+    public MctsBot(Settings settings) {
+        this(((settings.game_mode == 2) ? 80 : settings.tick_speed) / 2,
+            Runtime.getRuntime().availableProcessors());
+    }
+
+    public MctsBot(int time_budget_ms, int num_workers) {
+        this.num_workers = num_workers;
+        this.time_budget_nanos = time_budget_ms * 1_000_000L;
+        this.scratch_boards = new GameBoard[num_workers];
+        this.executor = Executors.newFixedThreadPool(num_workers, runnable -> {
+            Thread thread = new Thread(runnable, "mcts-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void set_time_budget(int time_budget_ms) {
+        this.time_budget_nanos = time_budget_ms * 1_000_000L;
+    }
+
+    @Override
+    public Direction next_move(GameBoard game_board) {
+        long start = System.nanoTime();
+        long deadline = start + time_budget_nanos;
+        GameBoard root = game_board.fork();
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int w = 0; w < num_workers; w++) {
+            if (scratch_boards[w] == null || scratch_boards[w].get_width() != root.get_width()
+                || scratch_boards[w].get_height() != root.get_height()) {
+                scratch_boards[w] = root.fork();
+            }
+            GameBoard scratch = scratch_boards[w];
+            long worker_seed = start * 31 + w;
+            futures.add(executor.submit(() -> search(root, scratch, deadline, worker_seed)));
+        }
+
+        long[] visits = new long[DIRECTIONS.length];
+        long rollouts = 0;
+        for (Future<long[]> future : futures) {
+            try {
+                long[] result = future.get();
+                for (int d = 0; d < DIRECTIONS.length; d++) {
+                    visits[d] += result[d];
+                }
+                rollouts += result[DIRECTIONS.length];
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        total_rollouts += rollouts;
+        total_nanos += elapsed;
+        last_rollouts_per_second = rollouts / Math.max(elapsed / 1e9, 1e-9);
+
+        int best = -1;
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            if (visits[d] > 0 && (best == -1 || visits[d] > visits[best])) {
+                best = d;
+            }
+        }
+        return (best == -1) ? fallback.next_move(game_board) : DIRECTIONS[best];
+    }
+
+    /**
+     * Grows one search tree until the deadline. Returns the visits of the four first moves
+     * followed by the number of rollouts.
+     */
+    private long[] search(GameBoard root, GameBoard scratch, long deadline, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] outcomes = new int[DIRECTIONS.length];
+        int[] heads = new int[DIRECTIONS.length];
+        Node[] path = new Node[ROLLOUT_DEPTH + 64];
+        Node root_node = new_node(root.get_hash());
+        long rollouts = 0;
+        do {
+            scratch.copy_state(root);
+            int start_points = scratch.getPoints();
+            Node node = root_node;
+            int length = 0;
+            path[length++] = node;
+            boolean alive = true;
+            boolean expanded = false;
+            while (alive && !expanded && length < path.length) {
+                scratch.evaluate_moves(outcomes, heads);
+                int d = select(node, outcomes);
+                if (d == -1) {
+                    alive = false;
+                    break;
+                }
+                alive = scratch.try_movement(DIRECTIONS[d]);
+                if (node.children[d] == null) {
+                    node.children[d] = alive ? new_node(scratch.get_hash()) : new Node();
+                    expanded = true;
+                }
+                node = node.children[d];
+                path[length++] = node;
+            }
+            double reward = rollout(scratch, alive, start_points, random, outcomes, heads);
+            for (int i = 0; i < length; i++) {
+                path[i].visits++;
+                path[i].value += reward;
+            }
+            rollouts++;
+        } while (System.nanoTime() < deadline);
+        store(root_node);
+
+        long[] result = new long[DIRECTIONS.length + 1];
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            result[d] = (root_node.children[d] == null) ? 0 : root_node.children[d].visits;
+        }
+        result[DIRECTIONS.length] = rollouts;
+        return result;
+    }
+
+    /**
+     * Creates the node of a state and seeds it with the statistics stored for the state.
+     */
+    private Node new_node(long hash) {
+        Node node = new Node();
+        node.hash = hash;
+        node.keyed = true;
+        long data = table.probe(hash);
+        if (data != TranspositionTable.MISS) {
+            node.visits = Math.min(TranspositionTable.get_depth(data), MAX_PRIOR_VISITS);
+            node.value = node.visits * (double) TranspositionTable.get_score(data) / REWARD_SCALE;
+        }
+        return node;
+    }
+
+    /**
+     * Stores the mean reward, the visits (as depth) and the most visited move of the node and of
+     * all nodes below it with at least MIN_STORED_VISITS visits.
+     */
+    private void store(Node node) {
+        if (node.visits < MIN_STORED_VISITS) {
+            return;
+        }
+        int best = 0;
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            Node child = node.children[d];
+            if (child != null) {
+                store(child);
+                if (node.children[best] == null || child.visits > node.children[best].visits) {
+                    best = d;
+                }
+            }
+        }
+        if (node.keyed) {
+            table.store(node.hash, (int) (node.value / node.visits * REWARD_SCALE),
+                Math.min(node.visits, 0xFFFF), TranspositionTable.EXACT, best);
+        }
+    }
+
+    /**
+     * Picks the child with the best upper confidence bound among the moves which do not die
+     * immediately; unvisited moves first. Returns -1 if every move dies.
+     */
+    private static int select(Node node, int[] outcomes) {
+        int best = -1;
+        double best_score = Double.NEGATIVE_INFINITY;
+        double log_visits = Math.log(Math.max(1, node.visits));
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            if (outcomes[d] == GameBoard.OUTCOME_DIE) {
+                continue;
+            }
+            Node child = node.children[d];
+            if (child == null || child.visits == 0) {
+                return d;
+            }
+            double score = child.value / child.visits
+                + EXPLORATION * Math.sqrt(log_visits / child.visits);
+            if (score > best_score) {
+                best = d;
+                best_score = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays random moves which do not die immediately (preferring apples) and returns a reward in
+     * [0, 1): half of it for surviving, half for the points gained.
+     */
+    private static double rollout(GameBoard scratch, boolean alive, int start_points,
+        SplittableRandom random, int[] outcomes, int[] heads) {
+        for (int i = 0; i < ROLLOUT_DEPTH && alive; i++) {
+            scratch.evaluate_moves(outcomes, heads);
+            int move = -1;
+            int options = 0;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                if (outcomes[d] == GameBoard.OUTCOME_EAT) {
+                    move = d;
+                    break;
+                }
+                if (outcomes[d] == GameBoard.OUTCOME_MOVE && random.nextInt(++options) == 0) {
+                    move = d;
+                }
+            }
+            if (move == -1) {
+                alive = false;
+                break;
+            }
+            alive = scratch.try_movement(DIRECTIONS[move]);
+        }
+        int gained = scratch.getPoints() - start_points;
+        return (alive ? 0.5 : 0) + 0.5 * gained / (gained + 1.0);
+    }
+
+    /**
+     * Rollouts per second of the last move.
+     */
+    public double get_rollouts_per_second() {
+        return last_rollouts_per_second;
+    }
+
+    /**
+     * Rollouts per second over all moves so far.
+     */
+    public double get_average_rollouts_per_second() {
+        return total_rollouts / Math.max(total_nanos / 1e9, 1e-9);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String get_name() {
+        return "MCTS";
+    }
+
+    /**
+     * Node of a search tree. Only touched by the worker owning the tree. Nodes of moves which die
+     * are not keyed, the board is not in a defined state after them.
+     */
+    private static class Node {
+
+        private final Node[] children = new Node[4];
+        private long hash;
+        private boolean keyed;
+        private int visits;
+        private double value;
+    }
+}
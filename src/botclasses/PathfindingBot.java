@@ -0,0 +1,54 @@
+package src.botclasses;
+
+import src.gameclasses.Direction;
+import src.mainclasses.GameBoard;
+
+/**
+ * Autopilot which follows the shortest path to the closest apple. Before taking the first step of
+ * the path it checks that the snake still has at least as many free spots around it as it is
+ * long afterwards; otherwise it takes the safe direction with the most space to avoid trapping
+ * itself. Reuses its search arrays, so a decision allocates nothing.
+ */
+public class PathfindingBot implements Bot {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final GridSearch search = new GridSearch();
+    private final int[] outcomes = new int[4];
+    private final int[] heads = new int[4];
+
+    @Override
+    public Direction next_move(GameBoard game_board) {
+        game_board.evaluate_moves(outcomes, heads);
+        int to_apple = search.path_to_apple(game_board);
+        int needed = game_board.get_snake_length() + 1;
+        int tail = game_board.get_tail_index();
+
+        if (to_apple != -1 && outcomes[to_apple] != GameBoard.OUTCOME_DIE) {
+            int freed = (outcomes[to_apple] == GameBoard.OUTCOME_MOVE) ? tail : -1;
+            if (search.count_reachable(game_board, heads[to_apple], freed, needed) >= needed) {
+                return DIRECTIONS[to_apple];
+            }
+        }
+
+        int best = -1;
+        int best_space = -1;
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            if (outcomes[d] == GameBoard.OUTCOME_DIE) {
+                continue;
+            }
+            int freed = (outcomes[d] == GameBoard.OUTCOME_MOVE) ? tail : -1;
+            int space = search.count_reachable(game_board, heads[d], freed, needed);
+            if (space > best_space) {
+                best = d;
+                best_space = space;
+            }
+        }
+        return (best == -1) ? game_board.get_direction() : DIRECTIONS[best];
+    }
+
+    @Override
+    public String get_name() {
+        return "Pathfinding";
+    }
+}
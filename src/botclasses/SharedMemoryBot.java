@@ -0,0 +1,254 @@
+package src.botclasses;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import src.gameclasses.Direction;
+import src.mainclasses.GameBoard;
+
+/**
+ * Bridge to a bot running in another process on the same machine. Before every movement the
+ * state of the board is published into a memory-mapped file and the direction is read from a
+ * command slot in the same file, which the other process fills in. Nothing is serialized and no
+ * system call is made per tick, the handoff only waits for the other process.
+ * <p>
+ * Layout of the file, all values little endian:
+ * <pre>
+ * 0 int MAGIC, 4 int VERSION, 8 int width, 12 int height
+ * 16 long sequence, odd while the game writes the state
+ * 24 int tick, 28 int head x, 32 int head y, 36 int Direction ordinal, 40 int points,
+ * 44 int snake length
+ * 64 long command sequence, 72 int Direction ordinal, written by the bot
+ * HEADER_SIZE: width * height bytes cell status (0 empty, 1 snake, 2 wall, 3 apple) in rows
+ * then (aligned to 4): width * height ints, board indexes of the snake parts from the head
+ * </pre>
+ * Protocol (seqlock): the bot waits for an even sequence it has not answered yet, reads the
+ * state and checks that the sequence did not change meanwhile, otherwise it reads again. It
+ * answers by writing the Direction ordinal followed by the sequence into the command slot. If
+ * no answer arrives in time the snake keeps its direction.
+ */
+public class SharedMemoryBot implements Bot {
+
+    public static final String BRIDGE_FILE = "bridge.mmap";
+    public static final int MAGIC = 0x42524B53;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 128;
+    private static final int SEQUENCE = 16;
+    private static final int COMMAND_SEQUENCE = 64;
+    private static final int COMMAND_DIRECTION = 72;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    /**
+     * Busy waiting rounds before giving the processor to other threads, e.g. the bot process if
+     * both share a core.
+     */
+    private static final int SPINS = 256;
+
+    private static final VarHandle LONGS = MethodHandles
+        .byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles
+        .byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final String file_name;
+    private final long timeout_nanos;
+    private MappedByteBuffer buffer;
+    private int width;
+    private int height;
+    private int snake_offset;
+    private byte[] written_cells;
+    private long sequence;
+    private int timeouts;
+
+    /**
+     * Creates a bridge using the file in the working directory. The game waits at most timeout_ms
+     * for an answer per tick.
+     */
+    public SharedMemoryBot(int timeout_ms) {
+        this(BRIDGE_FILE, timeout_ms);
+    }
+
+    public SharedMemoryBot(String file_name, int timeout_ms) {
+        this.file_name = file_name;
+        this.timeout_nanos = timeout_ms * 1_000_000L;
+    }
+
+    @Override
+    public Direction next_move(GameBoard game_board) {
+        if (buffer == null || width != game_board.get_width()
+            || height != game_board.get_height()) {
+            if (!map(game_board.get_width(), game_board.get_height())) {
+                return game_board.get_direction();
+            }
+        }
+        long published = publish(game_board);
+
+        long deadline = System.nanoTime() + timeout_nanos;
+        int spins = 0;
+        while ((long) LONGS.getAcquire(buffer, COMMAND_SEQUENCE) != published) {
+            if (System.nanoTime() > deadline) {
+                timeouts++;
+                return game_board.get_direction();
+            }
+            wait_spin(spins++);
+        }
+        int direction = (int) INTS.getOpaque(buffer, COMMAND_DIRECTION);
+        if (direction < 0 || direction >= DIRECTIONS.length) {
+            return game_board.get_direction();
+        }
+        return DIRECTIONS[direction];
+    }
+
+    /**
+     * Writes the state of the board and returns its (even) sequence.
+     */
+    private long publish(GameBoard game_board) {
+        LONGS.setRelease(buffer, SEQUENCE, ++sequence);
+        VarHandle.storeStoreFence();
+        int head = game_board.get_head_index();
+        buffer.putInt(24, game_board.get_ticks());
+        buffer.putInt(28, head % width);
+        buffer.putInt(32, head / width);
+        buffer.putInt(36, game_board.get_direction().ordinal());
+        buffer.putInt(40, game_board.getPoints());
+        buffer.putInt(44, game_board.get_snake_length());
+        for (int i = 0; i < written_cells.length; i++) {
+            byte status = (byte) game_board.get_status(i);
+            if (status != written_cells[i]) {
+                buffer.put(HEADER_SIZE + i, status);
+                written_cells[i] = status;
+            }
+        }
+        for (int i = 0; i < game_board.get_snake_length(); i++) {
+            buffer.putInt(snake_offset + i * Integer.BYTES, game_board.get_snake_part(i));
+        }
+        LONGS.setRelease(buffer, SEQUENCE, ++sequence);
+        return sequence;
+    }
+
+    private static void wait_spin(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    private boolean map(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int area = width * height;
+        snake_offset = (HEADER_SIZE + area + 3) & ~3;
+        try (RandomAccessFile file = new RandomAccessFile(file_name, "rw")) {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                snake_offset + (long) area * Integer.BYTES);
+        } catch (IOException e) {
+            System.out.println("[Bridge] IO Error: " + e.getMessage());
+            buffer = null;
+            return false;
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        written_cells = new byte[area];
+        for (int i = 0; i < area; i++) {
+            written_cells[i] = buffer.get(HEADER_SIZE + i);
+        }
+        // continue the sequence of an earlier game, so old answers are never taken as new ones
+        long last = Math.max((long) LONGS.getAcquire(buffer, SEQUENCE),
+            (long) LONGS.getAcquire(buffer, COMMAND_SEQUENCE));
+        sequence = (last + 1) & ~1L;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, width);
+        buffer.putInt(12, height);
+        return true;
+    }
+
+    /**
+     * Number of ticks in which the other process did not answer in time.
+     */
+    public int get_timeouts() {
+        return timeouts;
+    }
+
+    @Override
+    public String get_name() {
+        return "Bridge";
+    }
+
+    /**
+     * Example bot for the other side of the bridge: moves to a free neighbour spot, preferring
+     * the one closest to the first apple. Usage: SharedMemoryBot [file].
+     */
+    public static void main(String[] args) throws IOException {
+        String file_name = (args.length > 0) ? args[0] : BRIDGE_FILE;
+        MappedByteBuffer bridge;
+        try (RandomAccessFile file = new RandomAccessFile(file_name, "rw")) {
+            bridge = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        }
+        bridge.order(ByteOrder.LITTLE_ENDIAN);
+        int width = bridge.getInt(8);
+        int height = bridge.getInt(12);
+        byte[] cells = new byte[width * height];
+        long answered = (long) LONGS.getAcquire(bridge, COMMAND_SEQUENCE);
+        int spins = 0;
+        while (true) {
+            long start = (long) LONGS.getAcquire(bridge, SEQUENCE);
+            if ((start & 1) != 0 || start == answered) {
+                wait_spin(spins++);
+                continue;
+            }
+            spins = 0;
+            int head_x = bridge.getInt(28);
+            int head_y = bridge.getInt(32);
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = bridge.get(HEADER_SIZE + i);
+            }
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getAcquire(bridge, SEQUENCE) != start) {
+                continue;
+            }
+
+            int apple = -1;
+            for (int i = 0; i < cells.length && apple == -1; i++) {
+                if (cells[i] == 3) {
+                    apple = i;
+                }
+            }
+            int best = bridge.getInt(36);
+            int best_distance = Integer.MAX_VALUE;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int x = head_x;
+                int y = head_y;
+                switch (DIRECTIONS[d]) {
+                    case DOWN:
+                        y = (y + 1) % height;
+                        break;
+                    case UP:
+                        y = (y == 0) ? height - 1 : y - 1;
+                        break;
+                    case LEFT:
+                        x = (x == 0) ? width - 1 : x - 1;
+                        break;
+                    case RIGHT:
+                        x = (x + 1) % width;
+                        break;
+                }
+                byte status = cells[y * width + x];
+                if (status != 0 && status != 3) {
+                    continue;
+                }
+                int distance = (apple == -1) ? 0
+                    : Math.abs(apple % width - x) + Math.abs(apple / width - y);
+                if (distance < best_distance) {
+                    best = d;
+                    best_distance = distance;
+                }
+            }
+            INTS.setOpaque(bridge, COMMAND_DIRECTION, best);
+            LONGS.setRelease(bridge, COMMAND_SEQUENCE, start);
+            answered = start;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package src.botclasses;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size hash table from GameBoard.get_hash() to search results which can be shared by
+ * searchers running in parallel. Each slot consists of two longs: the key xor the data and the
+ * data. Writers never lock; a reader recomputes the key from both longs, so a slot which was torn
+ * by two concurrent writers is simply seen as a miss.
+ * <p>
+ * The data packs a score (32 bits), the search depth (16 bits), a bound flag (8 bits) and the
+ * ordinal of the best Direction (7 bits). The highest bit marks a used slot.
+ */
+public class TranspositionTable {
+
+    /**
+     * Flags describing how the stored score relates to the real score.
+     */
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+    /**
+     * Returned by probe() if the hash is not in the table.
+     */
+    public static final long MISS = 0;
+
+    private static final long USED = 1L << 63;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    /**
+     * Creates a table with 2^size_log2 slots (16 bytes each).
+     */
+    public TranspositionTable(int size_log2) {
+        this.slots = new AtomicLongArray(2 << size_log2);
+        this.mask = (1 << size_log2) - 1;
+    }
+
+    /**
+     * Stores a result. An existing entry of another state is always replaced, an entry of the same
+     * state only by a search of at least the same depth.
+     */
+    public void store(long hash, int score, int depth, int flag, int move) {
+        int slot = ((int) (hash ^ (hash >>> 32)) & mask) << 1;
+        long old_data = slots.get(slot + 1);
+        if ((slots.get(slot) ^ old_data) == hash && (old_data & USED) != 0
+            && get_depth(old_data) > depth) {
+            return;
+        }
+        long data = USED | ((long) (move & 0x7F) << 56) | ((long) (flag & 0xFF) << 48)
+            | ((long) (depth & 0xFFFF) << 32) | (score & 0xFFFFFFFFL);
+        slots.set(slot, hash ^ data);
+        slots.set(slot + 1, data);
+    }
+
+    /**
+     * Returns the data stored for the hash or MISS. Use the get methods to unpack it.
+     */
+    public long probe(long hash) {
+        int slot = ((int) (hash ^ (hash >>> 32)) & mask) << 1;
+        long data = slots.get(slot + 1);
+        if ((data & USED) == 0 || (slots.get(slot) ^ data) != hash) {
+            return MISS;
+        }
+        return data;
+    }
+
+    /**
+     * Forgets all entries.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0);
+        }
+    }
+
+    public static int get_score(long data) {
+        return (int) data;
+    }
+
+    public static int get_depth(long data) {
+        return (int) (data >>> 32) & 0xFFFF;
+    }
+
+    public static int get_flag(long data) {
+        return (int) (data >>> 48) & 0xFF;
+    }
+
+    public static int get_move(long data) {
+        return (int) (data >>> 56) & 0x7F;
+    }
+}
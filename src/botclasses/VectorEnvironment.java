@@ -0,0 +1,197 @@
+package src.botclasses;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import src.gameclasses.Direction;
+import src.gameclasses.Level;
+import src.mainclasses.GameBoard;
+
+/**
+ * Environment for training agents which steps a number of headless GameBoards of the same level
+ * at once. Observations, rewards and done flags are written into one direct ByteBuffer, so an
+ * agent outside of the JVM can read them without copying. A step allocates nothing: only the
+ * cells which changed since the last step are written to the planes. A finished game is reset
+ * with the next seed right away; its done flag is set and the observation shows the new game.
+ * <p>
+ * Layout of the buffer, all values little endian:
+ * <pre>
+ * header (HEADER_SIZE bytes), ints at
+ *   0 MAGIC, 4 VERSION, 8 number of environments, 12 width, 16 height,
+ *   20 bytes per observation, 24 offset of the observations, 28 offset of the rewards,
+ *   32 offset of the done flags, 36 number of steps done
+ * observations, one per environment
+ *   4 planes of width * height bytes, plane p has a 1 where the cell status is p
+ *   (0 empty, 1 snake, 2 wall, 3 apple), cells in rows from the top left
+ *   followed (aligned to 4) by the ints head x, head y, apple x, apple y (-1 if there is no
+ *   apple), Direction ordinal and points
+ * rewards, one float per environment: 1 for eating an apple, -1 for dying, 0 otherwise
+ * done flags, one byte per environment
+ * </pre>
+ */
+public class VectorEnvironment {
+
+    public static final int MAGIC = 0x564B4E53;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int PLANES = 4;
+    private static final int STEPS_POSITION = 36;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final GameBoard[] game_boards;
+    /**
+     * Cells as written to the planes of every environment, -1 before the first write.
+     */
+    private final byte[][] written_cells;
+    private final ByteBuffer buffer;
+    private final int num_envs;
+    private final int area;
+    private final int observation_size;
+    private final int info_offset;
+    private final int observations_offset;
+    private final int rewards_offset;
+    private final int dones_offset;
+    private long next_seed;
+    private int steps;
+
+    public VectorEnvironment(Level level, int num_envs, long seed) {
+        this.num_envs = num_envs;
+        this.next_seed = seed;
+        int width = level.get_width();
+        int height = level.get_height();
+        area = width * height;
+        info_offset = align(PLANES * area);
+        observation_size = info_offset + 6 * Integer.BYTES;
+        observations_offset = HEADER_SIZE;
+        rewards_offset = observations_offset + num_envs * observation_size;
+        dones_offset = rewards_offset + num_envs * Float.BYTES;
+        buffer = ByteBuffer.allocateDirect(align(dones_offset + num_envs))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, num_envs);
+        buffer.putInt(12, width);
+        buffer.putInt(16, height);
+        buffer.putInt(20, observation_size);
+        buffer.putInt(24, observations_offset);
+        buffer.putInt(28, rewards_offset);
+        buffer.putInt(32, dones_offset);
+
+        game_boards = new GameBoard[num_envs];
+        written_cells = new byte[num_envs][area];
+        for (int i = 0; i < num_envs; i++) {
+            game_boards[i] = new GameBoard(level, next_seed++);
+        }
+        reset();
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    /**
+     * Starts a new game in every environment and writes the observations.
+     */
+    public void reset() {
+        for (int i = 0; i < num_envs; i++) {
+            game_boards[i].reset_game(next_seed++);
+            Arrays.fill(written_cells[i], (byte) -1);
+            write_observation(i);
+            buffer.putFloat(rewards_offset + i * Float.BYTES, 0);
+            buffer.put(dones_offset + i, (byte) 0);
+        }
+        steps = 0;
+        buffer.putInt(STEPS_POSITION, steps);
+    }
+
+    /**
+     * Moves the snake of environment i in the direction with the ordinal actions[i] and writes
+     * the observations, rewards and done flags.
+     */
+    public void step(int[] actions) {
+        for (int i = 0; i < num_envs; i++) {
+            GameBoard game_board = game_boards[i];
+            int points = game_board.getPoints();
+            boolean alive = game_board.try_movement(DIRECTIONS[actions[i]]);
+            float reward;
+            if (!alive) {
+                reward = -1;
+                game_board.reset_game(next_seed++);
+            } else {
+                reward = (game_board.getPoints() > points) ? 1 : 0;
+            }
+            write_observation(i);
+            buffer.putFloat(rewards_offset + i * Float.BYTES, reward);
+            buffer.put(dones_offset + i, (byte) (alive ? 0 : 1));
+        }
+        steps++;
+        buffer.putInt(STEPS_POSITION, steps);
+    }
+
+    private void write_observation(int env) {
+        GameBoard game_board = game_boards[env];
+        byte[] written = written_cells[env];
+        int base = observations_offset + env * observation_size;
+        int width = game_board.get_width();
+        int apple = -1;
+        for (int i = 0; i < area; i++) {
+            byte status = (byte) game_board.get_status(i);
+            if (status == 3 && apple == -1) {
+                apple = i;
+            }
+            if (status != written[i]) {
+                if (written[i] == -1) {
+                    for (int p = 0; p < PLANES; p++) {
+                        buffer.put(base + p * area + i, (byte) 0);
+                    }
+                } else {
+                    buffer.put(base + written[i] * area + i, (byte) 0);
+                }
+                buffer.put(base + status * area + i, (byte) 1);
+                written[i] = status;
+            }
+        }
+        int head = game_board.get_head_index();
+        int info = base + info_offset;
+        buffer.putInt(info, head % width);
+        buffer.putInt(info + 4, head / width);
+        buffer.putInt(info + 8, (apple == -1) ? -1 : apple % width);
+        buffer.putInt(info + 12, (apple == -1) ? -1 : apple / width);
+        buffer.putInt(info + 16, game_board.get_direction().ordinal());
+        buffer.putInt(info + 20, game_board.getPoints());
+    }
+
+    /**
+     * Returns the buffer holding the header, observations, rewards and done flags.
+     */
+    public ByteBuffer get_buffer() {
+        return buffer;
+    }
+
+    public int get_num_envs() {
+        return num_envs;
+    }
+
+    public int get_observation_size() {
+        return observation_size;
+    }
+
+    public int get_observations_offset() {
+        return observations_offset;
+    }
+
+    public int get_rewards_offset() {
+        return rewards_offset;
+    }
+
+    public int get_dones_offset() {
+        return dones_offset;
+    }
+
+    /**
+     * Returns the board of environment i. It must not be changed.
+     */
+    public GameBoard get_game_board(int i) {
+        return game_boards[i];
+    }
+}
@@ -0,0 +1,42 @@
+package src.gameclasses;
+
+import java.io.Serializable;
+
+/**
+ * Difficulty estimate of a level measured by letting bots play it, see Tournament.
+ */
+public class LevelRating implements Serializable {
+
+    public String level_name;
+    public int games;
+
+    // Apples eaten
+    public double mean_score;
+    public int median_score;
+    public int p10_score;
+    public int p90_score;
+
+    // Ticks until the snake died or the game was stopped
+    public double mean_survival;
+    /**
+     * Share of the games in which the snake was still alive when the game was stopped.
+     */
+    public double survival_rate;
+
+    /**
+     * 0 (bots fill the whole level) to 100 (bots do not eat a single apple).
+     */
+    public int difficulty;
+
+    public LevelRating(String level_name) {
+        this.level_name = level_name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: difficulty %d, score mean %.1f p10/p50/p90 %d/%d/%d, "
+                + "survival %.0f ticks (%.0f%% alive), %d games", level_name, difficulty,
+            mean_score, p10_score, median_score, p90_score, mean_survival, survival_rate * 100,
+            games);
+    }
+}
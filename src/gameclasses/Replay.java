@@ -0,0 +1,151 @@
+package src.gameclasses;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Recording of a played game. Together with the level and the seed of the game board the recorded
+ * inputs are enough to re-simulate the game exactly. Every movement of the snake (tick) stores its
+ * direction, shots of the game mode "Gun" are stored as events happening between two ticks.
+ */
+public class Replay implements Serializable {
+
+    /**
+     * Computed value of the first version, so replays saved by it can still be read.
+     */
+    private static final long serialVersionUID = -4439350179165021063L;
+
+    /**
+     * Kinds of events caused by bullets.
+     */
+    public static final int EVENT_SLICE = 0;
+    public static final int EVENT_WALL = 1;
+    public static final int EVENT_APPLE = 2;
+    /**
+     * Number of ints stored per event: tick, kind, x, y, direction.
+     */
+    public static final int EVENT_SIZE = 5;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    public Level level;
+    public long seed;
+    public String player;
+    public int game_mode;
+    public int tick_speed;
+    public int claimed_score;
+    /**
+     * Date of the leaderboard entry of the game. Together with the player and the name of the
+     * level it links the replay to its entry, see ReplayVerifier.
+     */
+    public String date;
+
+    /**
+     * One Direction ordinal per tick.
+     */
+    private byte[] moves;
+    private int num_moves;
+    private int[] events;
+    private int num_events;
+
+    public Replay(Level level, long seed, String player, int game_mode, int tick_speed) {
+        this.level = level;
+        this.seed = seed;
+        this.player = player;
+        this.game_mode = game_mode;
+        this.tick_speed = tick_speed;
+        this.moves = new byte[256];
+        this.events = new int[4 * EVENT_SIZE];
+    }
+
+    /**
+     * Appends the direction of the next tick.
+     */
+    public void record_move(Direction direction) {
+        if (num_moves == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[num_moves++] = (byte) direction.ordinal();
+    }
+
+    /**
+     * Appends an event which happens after the ticks recorded so far.
+     */
+    public void record_event(int kind, int x, int y, Direction direction) {
+        if ((num_events + 1) * EVENT_SIZE > events.length) {
+            events = Arrays.copyOf(events, events.length * 2);
+        }
+        int offset = num_events * EVENT_SIZE;
+        events[offset] = num_moves;
+        events[offset + 1] = kind;
+        events[offset + 2] = x;
+        events[offset + 3] = y;
+        events[offset + 4] = direction.ordinal();
+        num_events++;
+    }
+
+    /**
+     * Drops everything recorded after the given tick, i.e. the moves from that tick on and the
+     * events after them. Used when a game is rewound.
+     */
+    public void truncate(int tick) {
+        if (tick < num_moves) {
+            num_moves = tick;
+            num_events = first_event_at(tick + 1);
+        }
+    }
+
+    /**
+     * Returns the number of recorded ticks.
+     */
+    public int length() {
+        return num_moves;
+    }
+
+    public Direction get_move(int tick) {
+        return DIRECTIONS[moves[tick]];
+    }
+
+    public int get_num_events() {
+        return num_events;
+    }
+
+    /**
+     * Returns the tick after which the event takes place.
+     */
+    public int get_event_tick(int event) {
+        return events[event * EVENT_SIZE];
+    }
+
+    public int get_event_kind(int event) {
+        return events[event * EVENT_SIZE + 1];
+    }
+
+    public int get_event_x(int event) {
+        return events[event * EVENT_SIZE + 2];
+    }
+
+    public int get_event_y(int event) {
+        return events[event * EVENT_SIZE + 3];
+    }
+
+    public Direction get_event_direction(int event) {
+        return DIRECTIONS[events[event * EVENT_SIZE + 4]];
+    }
+
+    /**
+     * Returns the index of the first event which takes place after the given tick or later.
+     */
+    public int first_event_at(int tick) {
+        int low = 0;
+        int high = num_events;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get_event_tick(mid) < tick) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -2,23 +2,16 @@ package src.mainclasses;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Random;
-import java.util.concurrent.CopyOnWriteArrayList;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.SwingUtilities;
 import src.gameclasses.Direction;
 import src.gameclasses.Level;
-import src.gameclasses.Settings;
 import src.utilityclasses.AudioPlayer;
 
 /**
  * The GameBoard is responsible for keeping track everything that happens on the field. The board
- * itself is represented by a 2-dimensional Integer Array filled with numbers coresponding to their
+ * itself is represented by a flat byte array (row by row) filled with numbers coresponding to their
  * ingame counterparts.
  */
 public class GameBoard {
@@ -64,6 +57,27 @@ public class GameBoard {
     private static int ABOVE = 1;
     private static int LEFT = 2;
     private static int RIGHT = 3;
+    /**
+     * Outcomes of a movement, see evaluate_moves().
+     */
+    public static final int OUTCOME_MOVE = 0;
+    public static final int OUTCOME_EAT = 1;
+    public static final int OUTCOME_DIE = 2;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    /**
+     * Random spots tried for a new apple before the empty spots are counted.
+     */
+    private static final int APPLE_ATTEMPTS = 64;
+    /**
+     * Salts of the Zobrist keys for cell contents, the head position and the direction.
+     */
+    private static final long ZOBRIST_CELL = 0x2545F4914F6CDD1DL;
+    private static final long ZOBRIST_HEAD = 0x5851F42D4C957F2DL;
+    private static final long ZOBRIST_DIRECTION = 0x14057B7EF767814FL;
+    /**
+     * Salt of the random numbers for the fruit icons, see peek_int().
+     */
+    private static final long FRUIT_SALT = 0x9FB21C651E98DF25L;
     private final String game_over_sound = "hurt.wav";
     private final String eating_apple_sound = "eating.wav";
     public Level level;
@@ -74,13 +88,29 @@ public class GameBoard {
      * Board int to ingame object:
      * <p>
      * 0 : empty 1 : snake 2 : wall 3 : apple
+     * <p>
+     * The spot x y is stored at index y * width + x.
      */
-    protected Integer[][] game_board;
-    protected List<Integer> copy_gameBoard;
+    protected byte[] game_board;
+    protected byte[] copy_gameBoard;
     /**
-     * Represent snake as list of integer coordinates.
+     * Represent snake as a ring buffer of board indexes. The head is stored at snake_head, the
+     * following parts at the ascending (wrapping) positions.
      */
-    private CopyOnWriteArrayList<Integer[]> snake_coordinates;
+    private int[] snake_coordinates;
+    private int snake_head;
+    private int snake_length;
+    /**
+     * Ring buffer position of the snake part on a spot, only valid for spots of the snake. Lets
+     * get_type() find the neighbours of a part without searching the snake.
+     */
+    private int[] snake_slots;
+    /**
+     * Set if the array is shared with a fork of the board. It has to be copied before the next
+     * change (copy-on-write).
+     */
+    private boolean board_shared;
+    private boolean snake_shared;
     // Audio
     private AudioPlayer audio_player;
     // Values
@@ -92,84 +122,410 @@ public class GameBoard {
     private int steps_done;
     private int threshold;
     private int num_apples;
+    private int ticks;
+    /**
+     * Direction of the last movement.
+     */
+    private Direction direction;
+    /**
+     * Zobrist hash over the cells, the head position and the direction, see get_hash().
+     */
+    private long hash;
+    // Random
+    private long seed;
+    private long rng_state;
+    // History
+    private RewindBuffer rewind_buffer;
+
+    /**
+     * Creates a board for a new game of the level. The size of the board is the size of the
+     * level.
+     */
+    public GameBoard(AudioPlayer audio_player, Level level) {
+        this(level, audio_player, new_seed());
+    }
+
+    /**
+     * Creates a board without audio output, e.g. to re-simulate a recorded game. Boards created
+     * with the same level and seed behave exactly the same for the same inputs.
+     */
+    public GameBoard(Level level, long seed) {
+        this(level, null, seed);
+    }
 
-    public GameBoard(Settings settings, AudioPlayer audio_player, Level level) {
+    private GameBoard(Level level, AudioPlayer audio_player, long seed) {
         this.audio_player = audio_player;
-        this.threshold = settings.num_rect_x + settings.num_rect_y;
-        this.width = settings.num_rect_x;
-        this.height = settings.num_rect_y;
-        this.game_board = level.game_board;
-        snake_coordinates = new CopyOnWriteArrayList<>();
-        snake_coordinates.add(level.head);
-        snake_coordinates.add(level.tail);
-        this.curr_pos_x = level.head[0];
-        this.curr_pos_y = level.head[1];
+        this.width = level.get_width();
+        this.height = level.get_height();
+        this.threshold = width + height;
+        this.level = level;
+        this.game_board = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                game_board[y * width + x] = level.game_board[y][x].byteValue();
+            }
+        }
+        this.snake_coordinates = new int[width * height];
+        this.snake_slots = new int[width * height];
 
         make_copy();
 
-        this.points = 0;
-        this.steps_done = 0;
+        init_game(seed);
+    }
 
-        this.level = level;
+    /**
+     * Copy constructor used by fork(). The arrays are shared until one of the boards changes them.
+     */
+    private GameBoard(GameBoard other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.threshold = other.threshold;
+        this.level = other.level;
+        this.random_index_for_fruit = other.random_index_for_fruit;
+        this.length_index_selector = other.length_index_selector;
+        this.copy_gameBoard = other.copy_gameBoard;
+        this.game_board = other.game_board;
+        this.snake_coordinates = other.snake_coordinates;
+        this.snake_slots = other.snake_slots;
+        this.snake_head = other.snake_head;
+        this.snake_length = other.snake_length;
+        this.board_shared = true;
+        this.snake_shared = true;
+        other.board_shared = true;
+        other.snake_shared = true;
+        this.curr_pos_x = other.curr_pos_x;
+        this.curr_pos_y = other.curr_pos_y;
+        this.points = other.points;
+        this.steps_done = other.steps_done;
+        this.num_apples = other.num_apples;
+        this.ticks = other.ticks;
+        this.direction = other.direction;
+        this.hash = other.hash;
+        this.seed = other.seed;
+        this.rng_state = other.rng_state;
+    }
 
-        for (int i = 0; i < settings.num_rect_x; i++) {
-            for (int j = 0; j < settings.num_rect_y; j++) {
-                if (game_board[j][i] == 3) {
-                    num_apples++;
-                }
+    /**
+     * Returns an independent copy of the current state without audio and rewind buffer, e.g. for
+     * bots searching ahead. Forking is O(1): the cells and the snake are shared copy-on-write, so
+     * only the first change of either board copies an array.
+     */
+    public GameBoard fork() {
+        return new GameBoard(this);
+    }
+
+    /**
+     * Overwrites the state of this board with the state of another board of the same size. Unlike
+     * fork() it reuses the arrays of this board and copies only the cells and the live part of the
+     * snake, so a bot can reset a scratch board for every simulation without allocating.
+     */
+    public void copy_state(GameBoard other) {
+        if (board_shared) {
+            game_board = new byte[game_board.length];
+            board_shared = false;
+        }
+        if (snake_shared) {
+            snake_coordinates = new int[snake_coordinates.length];
+            snake_slots = new int[snake_slots.length];
+            snake_shared = false;
+        }
+        System.arraycopy(other.game_board, 0, game_board, 0, game_board.length);
+        snake_head = other.snake_head;
+        snake_length = other.snake_length;
+        for (int i = 0; i < snake_length; i++) {
+            int slot = (snake_head + i) % snake_coordinates.length;
+            int index = other.snake_coordinates[slot];
+            snake_coordinates[slot] = index;
+            snake_slots[index] = slot;
+        }
+        level = other.level;
+        copy_gameBoard = other.copy_gameBoard;
+        curr_pos_x = other.curr_pos_x;
+        curr_pos_y = other.curr_pos_y;
+        points = other.points;
+        steps_done = other.steps_done;
+        num_apples = other.num_apples;
+        ticks = other.ticks;
+        direction = other.direction;
+        hash = other.hash;
+        seed = other.seed;
+        rng_state = other.rng_state;
+        if (rewind_buffer != null) {
+            rewind_buffer.clear();
+        }
+    }
+
+    private void own_board() {
+        if (board_shared) {
+            game_board = game_board.clone();
+            board_shared = false;
+        }
+    }
+
+    private void own_snake() {
+        if (snake_shared) {
+            snake_coordinates = snake_coordinates.clone();
+            snake_slots = snake_slots.clone();
+            snake_shared = false;
+        }
+    }
+
+    private void make_copy() {
+        copy_gameBoard = Arrays.copyOf(game_board, game_board.length);
+    }
+
+    /**
+     * Mixes the clock into a seed for a new game.
+     */
+    private static long new_seed() {
+        return mix(System.nanoTime() ^ Double.doubleToLongBits(Math.random()));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns a pseudo random number in [0, bound). Uses a SplitMix64 generator so the state is a
+     * single long which can be stored in snapshots.
+     */
+    private int next_int(int bound) {
+        rng_state += 0x9E3779B97F4A7C15L;
+        return (int) (((mix(rng_state) >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Returns a pseudo random number in [0, bound) derived from the state of the generator
+     * without advancing it, so boards which show fruit icons draw the same apples as boards which
+     * do not (e.g. replays and bots).
+     */
+    private int peek_int(int bound) {
+        return (int) (((mix(rng_state ^ FRUIT_SALT) >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Puts the snake to its start position, counts the apples of the level and places an apple if
+     * there is none.
+     */
+    private void init_game(long seed) {
+        this.seed = seed;
+        this.rng_state = seed;
+        this.curr_pos_x = level.head[0];
+        this.curr_pos_y = level.head[1];
+        own_board();
+        own_snake();
+        snake_head = 0;
+        snake_length = 0;
+        push_head(level.tail[1] * width + level.tail[0]);
+        push_head(level.head[1] * width + level.head[0]);
+        game_board[level.head[1] * width + level.head[0]] = 1;
+        game_board[level.tail[1] * width + level.tail[0]] = 1;
+        num_apples = 0;
+        for (byte cell : game_board) {
+            if (cell == 3) {
+                num_apples++;
             }
         }
+        switch (level.direction) {
+            case LevelEditor.EAST:
+                direction = Direction.RIGHT;
+                break;
+            case LevelEditor.SOUTH:
+                direction = Direction.DOWN;
+                break;
+            case LevelEditor.WEST:
+                direction = Direction.LEFT;
+                break;
+            default:
+                direction = Direction.UP;
+                break;
+        }
         generate_apple();
+        this.points = 0;
+        this.steps_done = 0;
+        this.ticks = 0;
+        this.hash = compute_hash();
+        if (rewind_buffer != null) {
+            rewind_buffer.clear();
+        }
     }
 
-    private void make_copy() {
-        copy_gameBoard = new LinkedList<>();
-        for (Integer[] row : game_board) {
-            copy_gameBoard.addAll(Arrays.asList(row));
+    /**
+     * Sets a spot of the board. Every change during a game goes through here (or push_head and
+     * pop_tail) so the rewind buffer sees it.
+     */
+    private void set_cell(int index, int value) {
+        own_board();
+        hash ^= zobrist_cell(index, game_board[index]) ^ zobrist_cell(index, value);
+        game_board[index] = (byte) value;
+        if (rewind_buffer != null) {
+            rewind_buffer.log_cell(index, value);
+        }
+    }
+
+    private void push_head(int index) {
+        own_snake();
+        snake_head = (snake_head == 0) ? snake_coordinates.length - 1 : snake_head - 1;
+        snake_coordinates[snake_head] = index;
+        snake_slots[index] = snake_head;
+        snake_length++;
+        if (rewind_buffer != null) {
+            rewind_buffer.log_push(index);
         }
     }
 
+    private int pop_tail() {
+        snake_length--;
+        if (rewind_buffer != null) {
+            rewind_buffer.log_pop();
+        }
+        return snake_coordinates[(snake_head + snake_length) % snake_coordinates.length];
+    }
+
+    private static long zobrist_cell(int index, int value) {
+        return (value == 0) ? 0 : mix(((long) index << 2 | value) + ZOBRIST_CELL);
+    }
+
+    private static long zobrist_head(int index) {
+        return mix(index + ZOBRIST_HEAD);
+    }
+
+    private static long zobrist_direction(Direction direction) {
+        return mix(direction.ordinal() + ZOBRIST_DIRECTION);
+    }
+
+    /**
+     * Computes the hash of the current state from scratch.
+     */
+    private long compute_hash() {
+        long h = zobrist_head(curr_pos_y * width + curr_pos_x) ^ zobrist_direction(direction);
+        for (int i = 0; i < game_board.length; i++) {
+            h ^= zobrist_cell(i, game_board[i]);
+        }
+        return h;
+    }
+
+    /**
+     * Returns a 64-bit Zobrist hash of the cell contents, the head position and the direction.
+     * The hash is updated with every change, so it costs nothing to query. Equal states of boards
+     * with the same size have equal hashes.
+     */
+    public long get_hash() {
+        return hash;
+    }
+
+    public Direction get_direction() {
+        return direction;
+    }
+
+    /**
+     * Returns the board index of the i-th snake part (0 is the head).
+     */
+    private int snake_part(int i) {
+        return snake_coordinates[(snake_head + i) % snake_coordinates.length];
+    }
+
+    /**
+     * Returns the number of the snake part (0 is the head) on the spot, -1 if there is none.
+     */
+    private int part_of(int index) {
+        int slot = snake_slots[index];
+        if (snake_coordinates[slot] != index) {
+            return -1;
+        }
+        int part = (slot - snake_head + snake_coordinates.length) % snake_coordinates.length;
+        return (part < snake_length) ? part : -1;
+    }
+
+    /**
+     * Returns the board index of the i-th snake part (0 is the head).
+     */
+    public int get_snake_part(int i) {
+        return snake_part(i);
+    }
+
     /**
      * Returns the coordanates of the snakes head as a size 2 Integer Array.
      */
     public Integer[] get_head() {
-        return snake_coordinates.get(0);
+        int head = snake_part(0);
+        return new Integer[]{head % width, head / width};
+    }
+
+    public int get_width() {
+        return width;
+    }
+
+    public int get_height() {
+        return height;
+    }
+
+    public int get_snake_length() {
+        return snake_length;
+    }
+
+    /**
+     * Returns the board index (y * width + x) of the head.
+     */
+    public int get_head_index() {
+        return snake_part(0);
+    }
+
+    /**
+     * Returns the board index (y * width + x) of the tail.
+     */
+    public int get_tail_index() {
+        return snake_part(snake_length - 1);
+    }
+
+    /**
+     * Returns the state of the spot at a board index.
+     */
+    public int get_status(int index) {
+        return game_board[index];
+    }
+
+    /**
+     * Returns the number of movements since the start of the game.
+     */
+    public int get_ticks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the seed the current game was started with.
+     */
+    public long get_seed() {
+        return seed;
     }
 
     /**
      * Empties spot on the board at a specific x y coordinate.
      */
     public void set_empty(int x, int y) {
-        game_board[y][x] = 0;
+        set_cell(y * width + x, 0);
     }
 
     /**
      * Gun shots can cut the snake at a certain spot and remove the points gained for the cut part.
      */
     public void slice_snake(int x, int y) {
-        var ref = new Object() {
-            boolean found = false;
-        };
-        snake_coordinates.removeIf(integers -> {
-            if (!ref.found && integers[0] == x && integers[1] == y) {
-                ref.found = true;
-                game_board[integers[1]][integers[0]] = 0;
-                return true;
-            } else if (ref.found) {
-                game_board[integers[1]][integers[0]] = 0;
-                return true;
-            } else {
-                return false;
+        int cut = part_of(y * width + x);
+        if (cut != -1) {
+            while (snake_length > cut) {
+                set_cell(pop_tail(), 0);
             }
-        });
-        points = snake_coordinates.size() - 1;
+        }
+        points = snake_length - 1;
     }
 
     /**
      * Returns the state of a spot at a specific x y coordinate on the board.
      */
     public int get_status(int x, int y) {
-        return game_board[y][x];
+        return game_board[y * width + x];
     }
 
     /**
@@ -180,36 +536,32 @@ public class GameBoard {
         if (get_status(x, y) != 1) {
             return -1;
         }
-        Integer[] pre = null;
-        Integer[] post = null;
-        for (int i = 0; i < snake_coordinates.size(); i++) {
-            if (snake_coordinates.get(i)[0] % width == x
-                && snake_coordinates.get(i)[1] % height == y) {
-                if (snake_coordinates.size() != 1) {
-                    if (i == 0) {
-                        pre = snake_coordinates.get(i + 1);
-                    } else if (i == snake_coordinates.size() - 1) {
-                        post = snake_coordinates.get(i - 1);
-                    } else {
-                        post = snake_coordinates.get(i - 1);
-                        pre = snake_coordinates.get(i + 1);
-                    }
-                }
+        int index = y * width + x;
+        int pre = -1;
+        int post = -1;
+        int i = part_of(index);
+        if (i != -1 && snake_length != 1) {
+            if (i == 0) {
+                pre = snake_part(i + 1);
+            } else if (i == snake_length - 1) {
+                post = snake_part(i - 1);
+            } else {
+                post = snake_part(i - 1);
+                pre = snake_part(i + 1);
             }
         }
 
-        Integer[] origin = new Integer[]{x, y};
-        if (pre == null && post == null) {
+        if (pre == -1 && post == -1) {
             // cannot happen since the snake has always the length 2
             return -2;
         } else {
-            if (pre == null) {
-                return compare(origin, post);
-            } else if (post == null) {
-                return 4 + compare(origin, pre);
+            if (pre == -1) {
+                return compare(index, post);
+            } else if (post == -1) {
+                return 4 + compare(index, pre);
             } else {
-                int pre_stat = compare(origin, pre);
-                int post_stat = compare(origin, post);
+                int pre_stat = compare(index, pre);
+                int post_stat = compare(index, post);
                 if (pre_stat == ABOVE && post_stat == BELOW) {
                     return VERTICAL_DOWN;
                 } else if (pre_stat == BELOW && post_stat == ABOVE) {
@@ -242,24 +594,28 @@ public class GameBoard {
     }
 
     /**
-     * Gives relative position of the point to the origin.
+     * Gives relative position of the point to the origin (both given as board indexes).
      */
-    private int compare(Integer[] origin, Integer[] point) {
+    private int compare(int origin, int point) {
+        int origin_x = origin % width;
+        int origin_y = origin / width;
+        int point_x = point % width;
+        int point_y = point / width;
         boolean opposite = false;
-        if (point[1] == height - 1 && origin[1] == 0
-            || origin[1] == height - 1 && point[1] == 0
-            || point[0] == width - 1 && origin[0] == 0
-            || origin[0] == width - 1 && point[0] == 0) {
+        if (point_y == height - 1 && origin_y == 0
+            || origin_y == height - 1 && point_y == 0
+            || point_x == width - 1 && origin_x == 0
+            || origin_x == width - 1 && point_x == 0) {
             opposite = true;
         }
-        if (point[1] > origin[1]) {
+        if (point_y > origin_y) {
             return (!opposite) ? BELOW : ABOVE;
-        } else if (point[1] < origin[1]) {
+        } else if (point_y < origin_y) {
             return (!opposite) ? ABOVE : BELOW;
         } else {
-            if (point[0] < origin[0]) {
+            if (point_x < origin_x) {
                 return (!opposite) ? LEFT : RIGHT;
-            } else if (point[0] > origin[0]) {
+            } else if (point_x > origin_x) {
                 return (!opposite) ? RIGHT : LEFT;
             } else {
                 return -3;
@@ -267,19 +623,49 @@ public class GameBoard {
         }
     }
 
+    /**
+     * Picks a random empty spot for an apple (the spot also_free counts as empty, -1 for none).
+     * Tries random spots first; if the board is (nearly) full it picks one of the empty spots
+     * directly instead of guessing forever. Returns -1 if there is no empty spot.
+     */
+    private int pick_apple_spot(int also_free) {
+        for (int attempt = 0; attempt < APPLE_ATTEMPTS; attempt++) {
+            int x = next_int(width);
+            int y = next_int(height);
+            int index = y * width + x;
+            if (game_board[index] == 0 || index == also_free) {
+                return index;
+            }
+        }
+        int free = 0;
+        for (int i = 0; i < game_board.length; i++) {
+            if (game_board[i] == 0 || i == also_free) {
+                free++;
+            }
+        }
+        if (free == 0) {
+            return -1;
+        }
+        int selected = next_int(free);
+        for (int i = 0; i < game_board.length; i++) {
+            if ((game_board[i] == 0 || i == also_free) && selected-- == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     private void generate_apple() {
         if (num_apples == 0) {
-            Random rand = new Random();
-            int x = rand.nextInt(width);
-            int y = rand.nextInt(height);
-            while (game_board[y][x] != 0) {
-                x = rand.nextInt(width);
-                y = rand.nextInt(height);
+            int index = pick_apple_spot(-1);
+            if (index == -1) {
+                // the snake fills the whole board
+                return;
             }
-            game_board[y][x] = 3;
+            set_cell(index, 3);
             num_apples++;
             if (random_index_for_fruit != null && length_index_selector != null) {
-                this.random_index_for_fruit = (int) (Math.random() * length_index_selector);
+                this.random_index_for_fruit = peek_int(length_index_selector);
             }
         }
     }
@@ -288,36 +674,24 @@ public class GameBoard {
      * Resets the gameBoard for a new game.
      */
     public void reset_game() {
-        this.curr_pos_x = level.head[0];
-        this.curr_pos_y = level.head[1];
-        snake_coordinates = new CopyOnWriteArrayList<>();
-        Iterator<Integer> copy_iterator = copy_gameBoard.iterator();
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                game_board[y][x] = copy_iterator.next();
-            }
-        }
-        snake_coordinates.add(level.head);
-        snake_coordinates.add(level.tail);
-        game_board[level.head[1]][level.head[0]] = 1;
-        game_board[level.tail[1]][level.tail[0]] = 1;
-        num_apples = 0;
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                if (game_board[j][i] == 3) {
-                    num_apples++;
-                }
-            }
-        }
-        generate_apple();
-        this.points = 0;
-        this.steps_done = 0;
+        reset_game(new_seed());
     }
 
     /**
-     * When an apple was eaten the snake gets longer.
+     * Resets the gameBoard for a new game started with the given seed.
      */
-    public void elongate_snake(int x, int y, src.gameclasses.Direction direction_current) {
+    public void reset_game(long seed) {
+        own_board();
+        System.arraycopy(copy_gameBoard, 0, game_board, 0, game_board.length);
+        init_game(seed);
+    }
+
+    /**
+     * Moves the current position one spot in the direction, wrapping around the edges.
+     */
+    private void move_position(Direction direction_current) {
+        hash ^= zobrist_head(curr_pos_y * width + curr_pos_x) ^ zobrist_direction(direction);
+        direction = direction_current;
         switch (direction_current) {
             case DOWN:
                 curr_pos_y++;
@@ -340,9 +714,17 @@ public class GameBoard {
                 curr_pos_x = curr_pos_x % width;
                 break;
         }
-        snake_coordinates.add(0, new Integer[]{curr_pos_x, curr_pos_y});
-        game_board[y][x] = 0;
-        game_board[curr_pos_y][curr_pos_x] = 1;
+        hash ^= zobrist_head(curr_pos_y * width + curr_pos_x) ^ zobrist_direction(direction);
+    }
+
+    /**
+     * When an apple was eaten the snake gets longer.
+     */
+    public void elongate_snake(int x, int y, src.gameclasses.Direction direction_current) {
+        move_position(direction_current);
+        push_head(curr_pos_y * width + curr_pos_x);
+        set_cell(y * width + x, 0);
+        set_cell(curr_pos_y * width + curr_pos_x, 1);
         num_apples--;
         generate_apple();
         points++;
@@ -352,79 +734,144 @@ public class GameBoard {
         return this.points;
     }
 
+    private void play_sound(String sound) {
+        if (audio_player == null) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            try {
+                audio_player.play_sound(sound);
+            } catch (LineUnavailableException | IOException | UnsupportedAudioFileException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
     /**
-     * Attempts the movement of the snake in a direction, depending on what type of spot the snake
-     * moves to. Returns a boolean whether the the snake successfully (true) moved or it died
-     * (false).
+     * Returns the board index the head reaches when moving one spot in the direction, wrapping
+     * around the edges like try_movement().
      */
-    public boolean try_movement(Direction direction_current) {
-        switch (direction_current) {
+    public int get_next_position(Direction direction) {
+        int x = curr_pos_x;
+        int y = curr_pos_y;
+        switch (direction) {
             case DOWN:
-                curr_pos_y++;
-                curr_pos_y = curr_pos_y % height;
+                y = (y + 1) % height;
                 break;
             case UP:
-                curr_pos_y--;
-                if (curr_pos_y < 0) {
-                    curr_pos_y = height - 1;
-                }
+                y = (y == 0) ? height - 1 : y - 1;
                 break;
             case LEFT:
-                curr_pos_x--;
-                if (curr_pos_x < 0) {
-                    curr_pos_x = width - 1;
-                }
+                x = (x == 0) ? width - 1 : x - 1;
                 break;
             case RIGHT:
-                curr_pos_x++;
-                curr_pos_x = curr_pos_x % width;
+                x = (x + 1) % width;
                 break;
         }
+        return y * width + x;
+    }
+
+    /**
+     * Returns the outcome (OUTCOME_MOVE, OUTCOME_EAT or OUTCOME_DIE) which try_movement() would
+     * have in the direction, without changing the board.
+     */
+    public int evaluate_move(Direction direction) {
+        int index = get_next_position(direction);
+        if (steps_done + 1 > threshold && num_apples == 1) {
+            // the apple is moved before the movement, see try_movement()
+            int old_apple = find_apple();
+            int new_apple = peek_relocated_apple(old_apple);
+            if (index == new_apple) {
+                return OUTCOME_EAT;
+            } else if (index == old_apple) {
+                return OUTCOME_MOVE;
+            }
+        }
+        switch (game_board[index]) {
+            case 0:
+                return OUTCOME_MOVE;
+            case 3:
+                return OUTCOME_EAT;
+            default:
+                return OUTCOME_DIE;
+        }
+    }
+
+    /**
+     * Evaluates all four directions without changing the board. For every direction d (in the
+     * order of Direction.values()) outcomes[d] is set to the outcome and heads[d] to the board
+     * index of the resulting head position.
+     */
+    public void evaluate_moves(int[] outcomes, int[] heads) {
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            outcomes[d] = evaluate_move(DIRECTIONS[d]);
+            heads[d] = get_next_position(DIRECTIONS[d]);
+        }
+    }
+
+    private int find_apple() {
+        for (int i = 0; i < game_board.length; i++) {
+            if (game_board[i] == 3) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns where generate_apple() would put the apple after removing the one at old_apple,
+     * using a copy of the random state.
+     */
+    private int peek_relocated_apple(int old_apple) {
+        long saved_state = rng_state;
+        int index = pick_apple_spot(old_apple);
+        rng_state = saved_state;
+        return index;
+    }
+
+    /**
+     * Attempts the movement of the snake in a direction, depending on what type of spot the snake
+     * moves to. Returns a boolean whether the the snake successfully (true) moved or it died
+     * (false).
+     */
+    public boolean try_movement(Direction direction_current) {
+        if (rewind_buffer != null) {
+            rewind_buffer.log_frame(this, ticks, curr_pos_x, curr_pos_y, direction, points,
+                steps_done, num_apples, rng_state);
+        }
+        move_position(direction_current);
+        ticks++;
         steps_done++;
         if (steps_done > threshold && num_apples == 1) {
-            outer:
-            for (int i = 0; i < width; i++) {
-                for (int j = 0; j < height; j++) {
-                    if (game_board[j][i] == 3) {
-                        num_apples--;
-                        game_board[j][i] = 0;
-                        generate_apple();
-                        break outer;
-                    }
+            for (int i = 0; i < game_board.length; i++) {
+                if (game_board[i] == 3) {
+                    num_apples--;
+                    set_cell(i, 0);
+                    generate_apple();
+                    break;
                 }
             }
             generate_apple();
             steps_done = 0;
-            System.err.println("@try_movement: reset apple");
+            if (audio_player != null) {
+                System.err.println("@try_movement: reset apple");
+            }
         }
-        switch (game_board[curr_pos_y][curr_pos_x]) {
+        int index = curr_pos_y * width + curr_pos_x;
+        switch (game_board[index]) {
             case 0:
-                snake_coordinates.add(0, new Integer[]{curr_pos_x, curr_pos_y});
-                Integer[] to_be_dropped = snake_coordinates.remove(snake_coordinates.size() - 1);
-                Objects.requireNonNull(to_be_dropped);
-                game_board[to_be_dropped[1]][to_be_dropped[0]] = 0;
-                game_board[curr_pos_y][curr_pos_x] = 1;
+                push_head(index);
+                set_cell(pop_tail(), 0);
+                set_cell(index, 1);
                 return true;
             case 1:
             case 2:
-                SwingUtilities.invokeLater(() -> {
-                    try {
-                        audio_player.play_sound(game_over_sound);
-                    } catch (LineUnavailableException | IOException | UnsupportedAudioFileException e) {
-                        e.printStackTrace();
-                    }
-                });
+                play_sound(game_over_sound);
                 return false;
             case 3:
-                SwingUtilities.invokeLater(() -> {
-                    try {
-                        audio_player.play_sound(eating_apple_sound);
-                    } catch (LineUnavailableException | IOException | UnsupportedAudioFileException e) {
-                        e.printStackTrace();
-                    }
-                });
-                snake_coordinates.add(0, new Integer[]{curr_pos_x, curr_pos_y});
-                game_board[curr_pos_y][curr_pos_x] = 1;
+                play_sound(eating_apple_sound);
+                push_head(index);
+                set_cell(index, 1);
                 steps_done = 0;
                 num_apples--;
                 generate_apple();
@@ -435,4 +882,146 @@ public class GameBoard {
                 return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Captures the complete state of the board. The snapshot shares nothing with the board.
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.game_board = Arrays.copyOf(game_board, game_board.length);
+        snapshot.snake_coordinates = new int[snake_length];
+        for (int i = 0; i < snake_length; i++) {
+            snapshot.snake_coordinates[i] = snake_part(i);
+        }
+        snapshot.curr_pos_x = curr_pos_x;
+        snapshot.curr_pos_y = curr_pos_y;
+        snapshot.direction = direction;
+        snapshot.points = points;
+        snapshot.steps_done = steps_done;
+        snapshot.num_apples = num_apples;
+        snapshot.ticks = ticks;
+        snapshot.seed = seed;
+        snapshot.rng_state = rng_state;
+        return snapshot;
+    }
+
+    /**
+     * Puts the board back into the state of the snapshot. The snapshot has to be taken from a
+     * board of the same size.
+     */
+    public void restore(Snapshot snapshot) {
+        own_board();
+        own_snake();
+        System.arraycopy(snapshot.game_board, 0, game_board, 0, game_board.length);
+        snake_head = 0;
+        snake_length = snapshot.snake_coordinates.length;
+        System.arraycopy(snapshot.snake_coordinates, 0, snake_coordinates, 0, snake_length);
+        for (int i = 0; i < snake_length; i++) {
+            snake_slots[snake_coordinates[i]] = i;
+        }
+        curr_pos_x = snapshot.curr_pos_x;
+        curr_pos_y = snapshot.curr_pos_y;
+        direction = snapshot.direction;
+        points = snapshot.points;
+        steps_done = snapshot.steps_done;
+        num_apples = snapshot.num_apples;
+        ticks = snapshot.ticks;
+        seed = snapshot.seed;
+        rng_state = snapshot.rng_state;
+        hash = compute_hash();
+        if (rewind_buffer != null) {
+            rewind_buffer.clear();
+        }
+    }
+
+    /**
+     * Attaches a rewind buffer which records the history of the board from now on.
+     */
+    public void set_rewind_buffer(RewindBuffer rewind_buffer) {
+        this.rewind_buffer = rewind_buffer;
+        if (rewind_buffer != null) {
+            rewind_buffer.clear();
+        }
+    }
+
+    /**
+     * Returns the first tick the board can be rewound to, -1 if there is none.
+     */
+    public int get_oldest_rewind_tick() {
+        return (rewind_buffer == null) ? -1 : rewind_buffer.get_oldest_tick();
+    }
+
+    /**
+     * Puts the board (including the snake) back into the exact state before the movement of the
+     * given tick. Returns false if the tick is not covered by the rewind buffer.
+     */
+    public boolean rewind_to(int tick) {
+        if (rewind_buffer == null) {
+            return false;
+        }
+        RewindBuffer buffer = rewind_buffer;
+        rewind_buffer = null;
+        boolean rewound = buffer.rewind_to(this, tick);
+        hash = compute_hash();
+        rewind_buffer = buffer;
+        return rewound;
+    }
+
+    /*
+     * Methods used by the RewindBuffer to apply recorded changes without recording them again.
+     */
+
+    void redo_cell(int index, int value) {
+        own_board();
+        game_board[index] = (byte) value;
+    }
+
+    void redo_push(int index) {
+        push_head(index);
+    }
+
+    void redo_pop() {
+        pop_tail();
+    }
+
+    void redo_frame(int ticks, int curr_pos_x, int curr_pos_y, Direction direction, int points,
+        int steps_done, int num_apples, long rng_state) {
+        this.ticks = ticks;
+        this.curr_pos_x = curr_pos_x;
+        this.curr_pos_y = curr_pos_y;
+        this.direction = direction;
+        this.points = points;
+        this.steps_done = steps_done;
+        this.num_apples = num_apples;
+        this.rng_state = rng_state;
+    }
+
+    /**
+     * Immutable copy of the state of a GameBoard, see snapshot() and restore().
+     */
+    public static class Snapshot {
+
+        private byte[] game_board;
+        /**
+         * Board indexes of the snake parts, the head first.
+         */
+        private int[] snake_coordinates;
+        private int curr_pos_x;
+        private int curr_pos_y;
+        private Direction direction;
+        private int points;
+        private int steps_done;
+        private int num_apples;
+        private int ticks;
+        private long seed;
+        private long rng_state;
+
+        public int get_ticks() {
+            return ticks;
+        }
+
+        public int get_points() {
+            return points;
+        }
+    }
+}
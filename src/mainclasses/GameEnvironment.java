@@ -13,6 +13,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
@@ -28,23 +30,32 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.imageio.ImageIO;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableModel;
+import src.botclasses.Bot;
+import src.botclasses.HamiltonianBot;
+import src.botclasses.MctsBot;
+import src.botclasses.PathfindingBot;
+import src.botclasses.SharedMemoryBot;
 import src.gameclasses.Bullet;
 import src.gameclasses.Direction;
 import src.gameclasses.Level;
 import src.gameclasses.MovementKeyListener;
+import src.gameclasses.Replay;
 import src.gameclasses.Settings;
 import src.utilityclasses.AudioPlayer;
 import src.utilityclasses.Leaderboard;
-import src.utilityclasses.LeaderboardEntry;
 import src.utilityclasses.LevelSerializer;
+import src.utilityclasses.ReplaySerializer;
+import src.utilityclasses.ScoreboardTableModel;
 import src.utilityclasses.SettingsSerializer;
 
 /**
@@ -106,6 +117,7 @@ public class GameEnvironment extends JFrame implements ActionListener {
     private JPanel jpanel_controls;
     private JPanel jpanel_scoreboard;
     private JTable table_scoreboard;
+    private ScoreboardTableModel scoreboard_model;
     private JButton btn_scoreboard_to_menu;
     private JScrollPane scroll_pane;
     private JButton btn_level_editor;
@@ -135,6 +147,35 @@ public class GameEnvironment extends JFrame implements ActionListener {
     private String game_info;
     private CopyOnWriteArraySet<Bullet> active_bullets_set = new CopyOnWriteArraySet<>();
 
+    // replay
+    private Replay replay_recorder;
+    private Replay last_replay;
+    private ReplayPlayer replay_player;
+    private GameBoard live_game_board;
+
+    // autopilot
+    private Bot autopilot;
+    /**
+     * Set once a bot moved in the current game, its entry is then marked in the game mode.
+     */
+    private boolean autopilot_moved;
+    /**
+     * The bots search on this thread, see schedule_autopilot().
+     */
+    private final ExecutorService autopilot_executor = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "autopilot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    private CompletableFuture<Direction> autopilot_move;
+    private Bot autopilot_move_bot;
+    private long autopilot_move_hash;
+
+    // rewind
+    private static final int REWIND_SECONDS = 3;
+    private RewindBuffer rewind_buffer = new RewindBuffer(1 << 16, 64, 64);
+
     // music
     private String in_game_music;
     private String in_menu_music;
@@ -346,6 +387,13 @@ public class GameEnvironment extends JFrame implements ActionListener {
             "<div>Press and hold S</div>" +
             "<h2>Pause</h2>" +
             "<div>Press SPACE</div>" +
+            "<h2>Autopilot</h2>" +
+            "<div>Press A to switch between pathfinding, Hamiltonian cycle, MCTS, " +
+            "external bot (bridge.mmap) and off</div>" +
+            "<h2>Rewind</h2>" +
+            "<div>Press BACKSPACE</div>" +
+            "<h2>Replay</h2>" +
+            "<div>Press R after the game, 1 2 3 for speed, LEFT RIGHT to scrub</div>" +
             "</body>" +
             "</html>";
         lbl_controls.setText(controls_html_str);
@@ -370,6 +418,39 @@ public class GameEnvironment extends JFrame implements ActionListener {
         set_icon(btn_play_again, "refresh-page-option.png");
     }
 
+    /**
+     * Starts the search of the autopilot for the next move on a fork of the board, so it runs
+     * between two ticks and not on the event dispatch thread.
+     */
+    private void schedule_autopilot() {
+        Bot bot = autopilot;
+        GameBoard board = game_board.fork();
+        autopilot_move_bot = bot;
+        autopilot_move_hash = board.get_hash();
+        autopilot_move = CompletableFuture.supplyAsync(() -> bot.next_move(board),
+            autopilot_executor);
+    }
+
+    /**
+     * Returns the move of the autopilot for the board. Takes the search started after the last
+     * movement, which is usually done by now; if the bot or the board changed since (rewind,
+     * shots, switching the bot) a new search is started and waited for.
+     */
+    private Direction next_autopilot_move() {
+        if (autopilot_move == null || autopilot_move_bot != autopilot
+            || autopilot_move_hash != game_board.get_hash()) {
+            schedule_autopilot();
+        }
+        CompletableFuture<Direction> move = autopilot_move;
+        autopilot_move = null;
+        try {
+            return move.join();
+        } catch (CompletionException e) {
+            e.printStackTrace();
+            return direction_current;
+        }
+    }
+
     private void set_window_size() {
         final int frameTopInset = this.getInsets().top;
         final int frameLeftInset = this.getInsets().left;
@@ -389,15 +470,28 @@ public class GameEnvironment extends JFrame implements ActionListener {
             return;
         }
 
+        if (autopilot != null) {
+            direction_current = next_autopilot_move();
+            autopilot_moved = true;
+            if (autopilot instanceof MctsBot) {
+                lbl_name.setText(settings.player + " (" + autopilot.get_name() + ", "
+                    + (int) ((MctsBot) autopilot).get_rollouts_per_second() + " rollouts/s)");
+            }
+        }
+        replay_recorder.record_move(direction_current);
         if (!game_board.try_movement(direction_current)) {
             before_game_status = 0;
             controls.set_enabled(false);
-            game_info = "Press SPACE to reset game board";
+            game_info = "Press SPACE to reset game board or R to watch the replay";
             active_bullets_set.clear();
-            SwingUtilities.invokeLater(() -> jpanel_game.repaint());
-            jpanel_game.setVisible(false);
             SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm");
             String date = formatter.format(new Date());
+            replay_recorder.claimed_score = game_board.getPoints();
+            replay_recorder.date = date;
+            last_replay = replay_recorder;
+            ReplaySerializer.save(last_replay);
+            SwingUtilities.invokeLater(() -> jpanel_game.repaint());
+            jpanel_game.setVisible(false);
             String game_mode = "";
             switch (settings.game_mode) {
                 case 0:
@@ -410,6 +504,9 @@ public class GameEnvironment extends JFrame implements ActionListener {
                     game_mode = "Speed";
                     break;
             }
+            if (autopilot_moved) {
+                game_mode += " (Autopilot)";
+            }
             leaderboard.add_entry(settings.player, game_board.getPoints(), date,
                 String.valueOf((((settings.tick_speed - 100) / 10) * -1) + 11),
                 game_board.level.name,
@@ -432,6 +529,9 @@ public class GameEnvironment extends JFrame implements ActionListener {
             tick_event_caller.stop();
         } else {
             controls.set_enabled(true);
+            if (autopilot != null) {
+                schedule_autopilot();
+            }
         }
 
         if (settings.game_mode == 2 && game_board.getPoints() % 5 == 0) {
@@ -502,6 +602,8 @@ public class GameEnvironment extends JFrame implements ActionListener {
                 super.setVisible(aFlag);
                 if (aFlag) {
                     from_game.set(true);
+                } else if (replay_player != null) {
+                    stop_replay();
                 }
             }
 
@@ -614,6 +716,8 @@ public class GameEnvironment extends JFrame implements ActionListener {
                                         | UnsupportedAudioFileException e) {
                                         e.printStackTrace();
                                     }
+                                    replay_recorder.record_event(Replay.EVENT_SLICE,
+                                        coordinate[0], coordinate[1], direction_current);
                                     game_board.slice_snake(coordinate[0], coordinate[1]);
                                     paint_hit_markers.add(coordinate);
                                     paint_n_milliseconds(200, coordinate);
@@ -626,6 +730,8 @@ public class GameEnvironment extends JFrame implements ActionListener {
                                         | UnsupportedAudioFileException e) {
                                         e.printStackTrace();
                                     }
+                                    replay_recorder.record_event(Replay.EVENT_WALL,
+                                        coordinate[0], coordinate[1], direction_current);
                                     game_board.set_empty(coordinate[0], coordinate[1]);
                                     paint_hit_markers.add(coordinate);
                                     paint_n_milliseconds(200, coordinate);
@@ -638,6 +744,8 @@ public class GameEnvironment extends JFrame implements ActionListener {
                                         | UnsupportedAudioFileException e) {
                                         e.printStackTrace();
                                     }
+                                    replay_recorder.record_event(Replay.EVENT_APPLE,
+                                        coordinate[0], coordinate[1], direction_current);
                                     game_board.elongate_snake(coordinate[0], coordinate[1],
                                         direction_current);
                                     paint_hit_markers.add(coordinate);
@@ -750,17 +858,9 @@ public class GameEnvironment extends JFrame implements ActionListener {
                 super.setVisible(aFlag);
                 if (aFlag) {
                     set_toolbar_enabled(false);
-                    int ranking = 1;
                     scroll_pane.setPreferredSize(
                         new Dimension((int) (settings.field_res_width * 0.6), -1));
-                    DefaultTableModel table_data_access = (DefaultTableModel) table_scoreboard
-                        .getModel();
-                    table_data_access.setRowCount(0);
-                    for (LeaderboardEntry entry_lb : leaderboard.get_lb_list()) {
-                        String[] entry_array = entry_lb.getAll();
-                        entry_array[0] = String.valueOf(ranking++);
-                        table_data_access.addRow(entry_array);
-                    }
+                    scoreboard_model.refresh();
                     if (from_game.get()) {
                         btn_play_again.setText("Play again");
                         btn_play_again.setVisible(true);
@@ -770,21 +870,28 @@ public class GameEnvironment extends JFrame implements ActionListener {
                 }
             }
         };
-        TableModel tableModel = new DefaultTableModel(column_names, column_names.length) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-        table_scoreboard = new JTable(tableModel);
+        scoreboard_model = new ScoreboardTableModel(leaderboard, column_names);
+        table_scoreboard = new JTable(scoreboard_model);
         table_scoreboard.setAutoResizeMode(JTable.AUTO_RESIZE_ALL_COLUMNS);
-        DefaultTableModel defaultTableModel = (DefaultTableModel) table_scoreboard.getModel();
         table_scoreboard.getTableHeader().getColumnModel().getColumn(3).setPreferredWidth(100);
         table_scoreboard.getTableHeader().getColumnModel().getColumn(0).setPreferredWidth(50);
-        defaultTableModel.setRowCount(0);
+        table_scoreboard.getTableHeader().setToolTipText(
+            "Double click a player, level or game mode to filter, click the header to clear, "
+                + "right click for statistics");
         scroll_pane = new JScrollPane(table_scoreboard);
     }
 
+    /**
+     * Filters the scoreboard by the value in a column (null to clear) and shows the filter in
+     * the header.
+     */
+    private void filter_scoreboard(int column, String value) {
+        scoreboard_model.filter(column, value);
+        table_scoreboard.getColumnModel().getColumn(column)
+            .setHeaderValue(scoreboard_model.get_title(column));
+        table_scoreboard.getTableHeader().repaint();
+    }
+
     private void init_window_change_procedure(boolean status_leave) {
         if (status_leave) {
             tick_event_caller.stop();
@@ -809,7 +916,33 @@ public class GameEnvironment extends JFrame implements ActionListener {
 
             @Override
             public void keyPressed(KeyEvent e) {
-                if (e.getKeyCode() == KeyEvent.VK_SPACE && before_game_status == 0) {
+                if (replay_player != null) {
+                    handle_replay_key(e);
+                } else if (e.getKeyCode() == KeyEvent.VK_R && before_game_status == 0
+                    && last_replay != null && jpanel_game.isVisible()) {
+                    start_replay(last_replay);
+                } else if (e.getKeyCode() == KeyEvent.VK_A && jpanel_game.isVisible()) {
+                    if (autopilot == null) {
+                        autopilot = new PathfindingBot();
+                    } else if (autopilot instanceof PathfindingBot) {
+                        autopilot = new HamiltonianBot();
+                    } else if (autopilot instanceof HamiltonianBot) {
+                        autopilot = new MctsBot(settings);
+                    } else if (autopilot instanceof MctsBot) {
+                        ((MctsBot) autopilot).shutdown();
+                        autopilot = new SharedMemoryBot(settings.tick_speed / 2);
+                    } else {
+                        autopilot = null;
+                    }
+                    lbl_name.setText((autopilot == null) ? settings.player
+                        : settings.player + " (" + autopilot.get_name() + ")");
+                    if (autopilot != null && tick_event_caller.isRunning()) {
+                        schedule_autopilot();
+                    }
+                } else if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE
+                    && tick_event_caller.isRunning() && !timer_paused) {
+                    rewind(REWIND_SECONDS);
+                } else if (e.getKeyCode() == KeyEvent.VK_SPACE && before_game_status == 0) {
                     game_info = "Press ENTER to play";
                     before_game_status++;
                     game_board.reset_game();
@@ -840,6 +973,14 @@ public class GameEnvironment extends JFrame implements ActionListener {
                             direction_current = src.gameclasses.Direction.LEFT;
                             break;
                     }
+                    if (replay_recorder == null || game_board.get_ticks() == 0) {
+                        replay_recorder = new Replay(game_board.level, game_board.get_seed(),
+                            settings.player, settings.game_mode, settings.tick_speed);
+                        autopilot_moved = false;
+                    }
+                    if (autopilot != null) {
+                        schedule_autopilot();
+                    }
                     before_game_status++;
                     tick_event_caller.start();
                     repaint_caller.start();
@@ -988,7 +1129,7 @@ public class GameEnvironment extends JFrame implements ActionListener {
             access_from_menu = true;
             jpanel_menu.setVisible(false);
             tabbed_pane_settings.setVisible(true);
-            String[] level_names = LevelSerializer.get_all_levels().keySet().toArray(new String[0]);
+            String[] level_names = LevelSerializer.get_identifiers().toArray(new String[0]);
             cmb_level.setModel(new DefaultComboBoxModel<>(level_names));
         });
 
@@ -1021,7 +1162,7 @@ public class GameEnvironment extends JFrame implements ActionListener {
             txt_name.setText(settings.player);
             jpanel_menu.setVisible(false);
             jpanel_input.setVisible(true);
-            list_levels.setListData(LevelSerializer.get_all_levels().keySet().toArray());
+            list_levels.setListData(LevelSerializer.get_identifiers().toArray());
             txt_name.requestFocus();
         });
 
@@ -1040,7 +1181,7 @@ public class GameEnvironment extends JFrame implements ActionListener {
                     name = "Player";
                 }
                 String level_name = String.valueOf(list_levels.getSelectedValue());
-                Level level = LevelSerializer.get_all_levels().get(level_name);
+                Level level = LevelSerializer.get_level(level_name);
                 if (level_name.equals("Walled") || level_name.equals("Empty") || level_name
                     .equals("Stripped")) {
                     level.init_level(level_name, settings.num_rect_x, settings.num_rect_y);
@@ -1067,7 +1208,8 @@ public class GameEnvironment extends JFrame implements ActionListener {
                 }
                 settings.player = name;
                 lbl_name.setText(name);
-                this.game_board = new GameBoard(settings, audio_player, level);
+                this.game_board = new GameBoard(audio_player, level);
+                this.game_board.set_rewind_buffer(rewind_buffer);
                 this.game_board.length_index_selector = list_of_fruits_assets.length;
                 this.game_board.random_index_for_fruit = 0;
                 this.game_board.random_index_for_fruit = 0;
@@ -1095,7 +1237,7 @@ public class GameEnvironment extends JFrame implements ActionListener {
                     ex.printStackTrace();
                 }
                 txt_new_name.setText(settings.player);
-                String[] level_names = LevelSerializer.get_all_levels().keySet()
+                String[] level_names = LevelSerializer.get_identifiers()
                     .toArray(new String[0]);
                 cmb_level.setModel(new DefaultComboBoxModel<>(level_names));
                 tabbed_pane_settings.setVisible(true);
@@ -1193,7 +1335,7 @@ public class GameEnvironment extends JFrame implements ActionListener {
                 }
             }
             String level_name = String.valueOf(cmb_level.getSelectedItem());
-            Level level = LevelSerializer.get_all_levels().get(level_name);
+            Level level = LevelSerializer.get_level(level_name);
             if (level_name.equals("Walled (Default)") || level_name.equals("Torus (Default)")
                 || level_name.equals("Striped (Default)")) {
                 level.init_level(level_name, settings.num_rect_x, settings.num_rect_y);
@@ -1271,7 +1413,8 @@ public class GameEnvironment extends JFrame implements ActionListener {
                     direction_current = Direction.LEFT;
                     break;
             }
-            this.game_board = new src.mainclasses.GameBoard(settings, audio_player, level);
+            this.game_board = new src.mainclasses.GameBoard(audio_player, level);
+            this.game_board.set_rewind_buffer(rewind_buffer);
             this.game_board.length_index_selector = list_of_fruits_assets.length;
             this.game_board.random_index_for_fruit = 0;
             SettingsSerializer.update_file(settings);
@@ -1288,6 +1431,35 @@ public class GameEnvironment extends JFrame implements ActionListener {
             }
         });
 
+        table_scoreboard.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = table_scoreboard.rowAtPoint(e.getPoint());
+                int column = table_scoreboard.columnAtPoint(e.getPoint());
+                if (e.getClickCount() == 2 && row != -1 && scoreboard_model.is_filterable(column)) {
+                    filter_scoreboard(column, (String) scoreboard_model.getValueAt(row, column));
+                }
+            }
+        });
+
+        JPopupMenu scoreboard_menu = new JPopupMenu();
+        JMenuItem item_statistics = new JMenuItem("Statistics");
+        item_statistics.addActionListener(
+            e -> new StatsView(this, leaderboard.get_stats()).setVisible(true));
+        scoreboard_menu.add(item_statistics);
+        table_scoreboard.setComponentPopupMenu(scoreboard_menu);
+        scroll_pane.setComponentPopupMenu(scoreboard_menu);
+
+        table_scoreboard.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table_scoreboard.columnAtPoint(e.getPoint());
+                if (scoreboard_model.is_filterable(column)) {
+                    filter_scoreboard(column, null);
+                }
+            }
+        });
+
         btn_play_again.addActionListener(e -> {
             play_select_sound();
             jpanel_scoreboard.setVisible(false);
@@ -1337,6 +1509,92 @@ public class GameEnvironment extends JFrame implements ActionListener {
         });
     }
 
+    /**
+     * Rewinds the running game by the given number of seconds (as far as the rewind buffer
+     * reaches). The recorded replay is cut at the same tick, so it stays in sync with the board.
+     */
+    private void rewind(int seconds) {
+        int target = Math.max(game_board.get_oldest_rewind_tick(),
+            game_board.get_ticks() - seconds * 1000 / tick_event_caller.getDelay());
+        if (target < 0 || !game_board.rewind_to(target)) {
+            return;
+        }
+        // the restored board moved last (or starts) in this direction
+        direction_current = game_board.get_direction();
+        replay_recorder.truncate(target);
+        active_bullets_set.clear();
+        lbl_points.setText(String.format("Points: %d", game_board.getPoints()));
+        jpanel_game.repaint();
+    }
+
+    /**
+     * Shows a recorded game in the game panel. The live game board is kept aside and the replay is
+     * played by its own timer, so tick_event_caller is not touched.
+     */
+    private void start_replay(Replay replay) {
+        live_game_board = game_board;
+        replay_player = new ReplayPlayer(replay);
+        game_board = replay_player.get_game_board();
+        game_board.length_index_selector = list_of_fruits_assets.length;
+        game_board.random_index_for_fruit = 0;
+        game_info = "";
+        replay_player.play(1, this::update_replay_frame);
+    }
+
+    private void stop_replay() {
+        replay_player.pause();
+        replay_player = null;
+        game_board = live_game_board;
+        live_game_board = null;
+        game_info = "Press SPACE to reset game board or R to watch the replay";
+        lbl_points.setText(String.format("Points: %d", game_board.getPoints()));
+        jpanel_game.repaint();
+    }
+
+    private void update_replay_frame() {
+        lbl_points.setText(String.format("Replay %dx: %d/%d Points: %d", replay_player.get_speed(),
+            replay_player.get_tick(), replay_player.get_replay().length(),
+            game_board.getPoints()));
+        jpanel_game.repaint();
+    }
+
+    /**
+     * Controls of the replay: 1, 2 and 3 play with 1x, 4x and 16x speed, SPACE pauses, LEFT and
+     * RIGHT scrub through the game and R returns to the game.
+     */
+    private void handle_replay_key(KeyEvent e) {
+        int scrub_ticks = 5000 / replay_player.get_replay().tick_speed;
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_1:
+                replay_player.play(1, this::update_replay_frame);
+                break;
+            case KeyEvent.VK_2:
+                replay_player.play(4, this::update_replay_frame);
+                break;
+            case KeyEvent.VK_3:
+                replay_player.play(16, this::update_replay_frame);
+                break;
+            case KeyEvent.VK_SPACE:
+                if (replay_player.is_playing()) {
+                    replay_player.pause();
+                } else {
+                    replay_player.play(replay_player.get_speed(), this::update_replay_frame);
+                }
+                break;
+            case KeyEvent.VK_LEFT:
+                replay_player.seek(replay_player.get_tick() - scrub_ticks);
+                update_replay_frame();
+                break;
+            case KeyEvent.VK_RIGHT:
+                replay_player.seek(replay_player.get_tick() + scrub_ticks);
+                update_replay_frame();
+                break;
+            case KeyEvent.VK_R:
+                stop_replay();
+                break;
+        }
+    }
+
     private void play_select_sound() {
         try {
             audio_player.play_sound("select.wav");
@@ -332,7 +332,7 @@ public class LevelEditor extends JFrame implements MouseListener, MouseMotionLis
                 jpanel_editor.setVisible(true);
                 selected_level = String.valueOf(list_levels.getSelectedValue());
                 lbl_level_name.setText(selected_level);
-                Level level = LevelSerializer.get_all_levels().get(selected_level);
+                Level level = LevelSerializer.get_level(selected_level);
                 settings.set_field_size(level.get_width(), level.get_height());
                 resize_window();
                 this.game_board = level.game_board;
@@ -350,7 +350,7 @@ public class LevelEditor extends JFrame implements MouseListener, MouseMotionLis
 
         btn_create_level.addActionListener(e -> {
             String identifier = "";
-            Set<String> all_identifier = LevelSerializer.get_all_levels().keySet();
+            Set<String> all_identifier = LevelSerializer.get_identifiers();
             while (identifier.isEmpty() || all_identifier.contains(identifier)) {
                 identifier = JOptionPane
                     .showInputDialog(new JFrame(), "Please enter the level name");
@@ -395,9 +395,9 @@ public class LevelEditor extends JFrame implements MouseListener, MouseMotionLis
      */
     private void load_identifier() {
         Vector<String> levels_vec = new Vector<>();
-        LevelSerializer.get_all_levels().forEach((s, level) -> {
-            if (level.modifiable) {
-                levels_vec.add(s);
+        LevelSerializer.get_headers().forEach(header -> {
+            if (header.modifiable) {
+                levels_vec.add(header.identifier);
             }
         });
         list_levels.setListData(levels_vec.toArray());
@@ -0,0 +1,172 @@
+package src.mainclasses;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.Timer;
+import src.gameclasses.Replay;
+
+/**
+ * Re-simulates a recorded game on its own headless GameBoard. Stepping runs as fast as the board
+ * allows, while every KEYFRAME_INTERVAL ticks a snapshot is kept so seeking only has to replay the
+ * ticks since the closest keyframe. For watching a game a Swing Timer plays the replay at a
+ * multiple of the recorded speed, independent of the timers of the GameEnvironment.
+ */
+public class ReplayPlayer {
+
+    public static final int KEYFRAME_INTERVAL = 512;
+
+    private final Replay replay;
+    private final GameBoard game_board;
+    /**
+     * Keyframe i holds the state after i * KEYFRAME_INTERVAL ticks.
+     */
+    private final List<GameBoard.Snapshot> keyframes = new ArrayList<>();
+    private int next_event;
+    private boolean alive;
+
+    // playback
+    private Timer playback_timer;
+    private int speed;
+
+    public ReplayPlayer(Replay replay) {
+        this.replay = replay;
+        this.game_board = new GameBoard(replay.level, replay.seed);
+        this.alive = true;
+        this.speed = 1;
+        keyframes.add(game_board.snapshot());
+    }
+
+    public GameBoard get_game_board() {
+        return game_board;
+    }
+
+    public Replay get_replay() {
+        return replay;
+    }
+
+    public int get_tick() {
+        return game_board.get_ticks();
+    }
+
+    /**
+     * Returns true as long as there are ticks left to replay.
+     */
+    public boolean has_next() {
+        return alive && game_board.get_ticks() < replay.length();
+    }
+
+    /**
+     * Returns true if the snake died during the replayed ticks.
+     */
+    public boolean is_game_over() {
+        return !alive;
+    }
+
+    /**
+     * Replays the events and the movement of the next tick. Returns false if the replay is over.
+     */
+    public boolean step() {
+        if (!has_next()) {
+            return false;
+        }
+        int tick = game_board.get_ticks();
+        while (next_event < replay.get_num_events() && replay.get_event_tick(next_event) <= tick) {
+            apply_event(next_event++);
+        }
+        alive = game_board.try_movement(replay.get_move(tick));
+        tick++;
+        if (alive && tick % KEYFRAME_INTERVAL == 0
+            && tick / KEYFRAME_INTERVAL == keyframes.size()) {
+            keyframes.add(game_board.snapshot());
+        }
+        return has_next();
+    }
+
+    private void apply_event(int event) {
+        int x = replay.get_event_x(event);
+        int y = replay.get_event_y(event);
+        switch (replay.get_event_kind(event)) {
+            case Replay.EVENT_SLICE:
+                game_board.slice_snake(x, y);
+                break;
+            case Replay.EVENT_WALL:
+                game_board.set_empty(x, y);
+                break;
+            case Replay.EVENT_APPLE:
+                game_board.elongate_snake(x, y, replay.get_event_direction(event));
+                break;
+        }
+    }
+
+    /**
+     * Replays all remaining ticks and returns the final score.
+     */
+    public int run_to_end() {
+        while (step()) {
+        }
+        return game_board.getPoints();
+    }
+
+    /**
+     * Brings the board into the state after the given number of ticks. Starts from the closest
+     * keyframe before the tick unless the board is already between that keyframe and the tick.
+     */
+    public void seek(int tick) {
+        tick = Math.max(0, Math.min(tick, replay.length()));
+        int keyframe = Math.min(tick / KEYFRAME_INTERVAL, keyframes.size() - 1);
+        int current = game_board.get_ticks();
+        if (tick < current || keyframe * KEYFRAME_INTERVAL > current) {
+            game_board.restore(keyframes.get(keyframe));
+            next_event = replay.first_event_at(game_board.get_ticks());
+            alive = true;
+        }
+        while (game_board.get_ticks() < tick && step()) {
+        }
+    }
+
+    /**
+     * Starts (or continues) to play the replay with a multiple of the recorded speed. After each
+     * tick on_frame is run on the EDT, e.g. to repaint the game panel.
+     */
+    public void play(int speed, Runnable on_frame) {
+        this.speed = speed;
+        if (playback_timer == null) {
+            playback_timer = new Timer(get_frame_delay(), e -> {
+                if (!step()) {
+                    playback_timer.stop();
+                }
+                playback_timer.setDelay(get_frame_delay());
+                on_frame.run();
+            });
+        }
+        playback_timer.setDelay(get_frame_delay());
+        playback_timer.start();
+    }
+
+    public void pause() {
+        if (playback_timer != null) {
+            playback_timer.stop();
+        }
+    }
+
+    public boolean is_playing() {
+        return playback_timer != null && playback_timer.isRunning();
+    }
+
+    public int get_speed() {
+        return speed;
+    }
+
+    /**
+     * Delay between two ticks as it was during the recorded game, divided by the playback speed.
+     * For the game mode "Speed" the acceleration of GameEnvironment.actionPerformed is mirrored.
+     */
+    private int get_frame_delay() {
+        int delay = replay.tick_speed;
+        if (replay.game_mode == 2) {
+            int points = game_board.getPoints();
+            delay = Math.max(80, replay.tick_speed - ((points - points % 5) * 2));
+        }
+        return Math.max(1, delay / speed);
+    }
+}
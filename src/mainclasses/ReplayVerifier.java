@@ -0,0 +1,187 @@
+package src.mainclasses;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import src.gameclasses.Replay;
+import src.utilityclasses.Leaderboard;
+import src.utilityclasses.LeaderboardEntry;
+import src.utilityclasses.ReplaySerializer;
+
+/**
+ * Offline tool which checks submitted games. Every replay is re-simulated on a headless GameBoard
+ * and the score is compared to the score of its leaderboard entry, the entry with the same
+ * player, date and level. The replays are independent of each other, so they are loaded and
+ * verified in parallel on all cores.
+ * <p>
+ * Usage: ReplayVerifier [folder], the folder defaults to 'replays/'. The leaderboard is read from
+ * the working directory.
+ */
+public class ReplayVerifier {
+
+    public static void main(String[] args) {
+        String dir = (args.length > 0) ? args[0] : ReplaySerializer.REPLAY_DIR;
+        List<File> files = ReplaySerializer.get_all_files(dir);
+        List<LeaderboardEntry> entries = new Leaderboard().get_lb_list();
+        long start = System.nanoTime();
+        List<Result> results = verify_files(files, entries);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int mismatches = 0;
+        for (Result result : results) {
+            if (!result.is_valid()) {
+                mismatches++;
+                System.out.println("[Verify] Mismatch " + result);
+            }
+        }
+        System.out.println(String.format(
+            "[Verify] %d replays, %d mismatches, %.2f s (%.0f replays/s)", results.size(),
+            mismatches, seconds, results.size() / Math.max(seconds, 1e-9)));
+    }
+
+    /**
+     * Loads and verifies the replay files in parallel and links them to the entries.
+     */
+    public static List<Result> verify_files(List<File> files, List<LeaderboardEntry> entries) {
+        List<Result> results = files.parallelStream().map(file -> {
+            Replay replay = ReplaySerializer.load(file);
+            if (replay == null) {
+                return new Result(file.getName(), null, null, null, -1, false);
+            }
+            return verify(file.getName(), replay);
+        }).collect(Collectors.toList());
+        return link(results, entries);
+    }
+
+    /**
+     * Verifies the replays in parallel and links them to the entries.
+     */
+    public static List<Result> verify_all(List<Replay> replays, List<LeaderboardEntry> entries) {
+        List<Result> results = replays.parallelStream()
+            .map(replay -> verify(replay.player, replay))
+            .collect(Collectors.toList());
+        return link(results, entries);
+    }
+
+    /**
+     * Re-simulates a single replay. The game is only complete if the recorded moves end exactly
+     * with the death of the snake. The result is not linked to an entry yet.
+     */
+    public static Result verify(String name, Replay replay) {
+        String level_name = (replay.level == null) ? null : replay.level.name;
+        try {
+            ReplayPlayer player = new ReplayPlayer(replay);
+            int score = player.run_to_end();
+            boolean complete = player.is_game_over()
+                && player.get_tick() == replay.length();
+            return new Result(name, replay.player, replay.date, level_name, score, complete);
+        } catch (RuntimeException e) {
+            // corrupt replays, e.g. moves outside of the board
+            return new Result(name, replay.player, replay.date, level_name, -1, false);
+        }
+    }
+
+    /**
+     * Links every result to an entry with the same player, date and level. The date has only
+     * minutes, so there can be several entries for a key: each entry is linked to one replay
+     * at most, an entry with the replayed score first. A replay left without an entry of its
+     * key (or without a date) is not linked.
+     */
+    public static List<Result> link(List<Result> results, List<LeaderboardEntry> entries) {
+        Map<List<String>, List<LeaderboardEntry>> candidates = new HashMap<>();
+        for (LeaderboardEntry entry : entries) {
+            candidates.computeIfAbsent(
+                key(entry.getPlayerName(), entry.getDate(), entry.getLevelName()),
+                k -> new ArrayList<>()).add(entry);
+        }
+        LeaderboardEntry[] linked = new LeaderboardEntry[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            List<LeaderboardEntry> list = candidates.get(result.key());
+            if (result.date == null || list == null) {
+                continue;
+            }
+            for (int j = 0; j < list.size(); j++) {
+                if (list.get(j).getScore() == result.replayed_score) {
+                    linked[i] = list.remove(j);
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            List<LeaderboardEntry> list = candidates.get(result.key());
+            if (linked[i] == null && result.date != null && list != null && !list.isEmpty()) {
+                linked[i] = list.remove(0);
+            }
+        }
+        List<Result> linked_results = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            linked_results.add(results.get(i).with_entry(linked[i]));
+        }
+        return linked_results;
+    }
+
+    private static List<String> key(String player, String date, String level_name) {
+        return Arrays.asList(player, date, level_name);
+    }
+
+    /**
+     * Outcome of the verification of one replay.
+     */
+    public static class Result {
+
+        public final String name;
+        public final String player;
+        public final String date;
+        public final String level_name;
+        public final int replayed_score;
+        public final boolean complete;
+        /**
+         * Leaderboard entry of the game, null if there is none.
+         */
+        public final LeaderboardEntry entry;
+
+        public Result(String name, String player, String date, String level_name,
+            int replayed_score, boolean complete) {
+            this(name, player, date, level_name, replayed_score, complete, null);
+        }
+
+        private Result(String name, String player, String date, String level_name,
+            int replayed_score, boolean complete, LeaderboardEntry entry) {
+            this.name = name;
+            this.player = player;
+            this.date = date;
+            this.level_name = level_name;
+            this.replayed_score = replayed_score;
+            this.complete = complete;
+            this.entry = entry;
+        }
+
+        private List<String> key() {
+            return ReplayVerifier.key(player, date, level_name);
+        }
+
+        public Result with_entry(LeaderboardEntry entry) {
+            return new Result(name, player, date, level_name, replayed_score, complete, entry);
+        }
+
+        /**
+         * A game is valid if it is complete and the replayed score matches its entry.
+         */
+        public boolean is_valid() {
+            return complete && entry != null && entry.getScore() == replayed_score;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + player + ", " + date + ", " + level_name + "): "
+                + ((entry == null) ? "no leaderboard entry" : "leaderboard " + entry.getScore())
+                + ", replayed " + replayed_score + (complete ? "" : ", incomplete");
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package src.mainclasses;
+
+import src.gameclasses.Direction;
+
+/**
+ * Fixed size history of a GameBoard which allows to rewind the last ticks of a game. Every change
+ * of the board (changed cells, head and tail moves of the snake) is appended as a small record to
+ * a ring buffer of ints and every snapshot_interval ticks a snapshot of the board is kept. To
+ * rewind, the latest snapshot before the target tick is restored and the recorded changes are
+ * applied again up to the target tick. Old records and snapshots are overwritten, so the memory
+ * use does not grow with the length of the game.
+ */
+public class RewindBuffer {
+
+    /**
+     * Record types and their sizes in ints (including the type).
+     */
+    private static final int CELL = 0;
+    private static final int PUSH = 1;
+    private static final int POP = 2;
+    private static final int FRAME = 3;
+    private static final int CELL_SIZE = 3;
+    private static final int PUSH_SIZE = 2;
+    private static final int POP_SIZE = 1;
+    private static final int FRAME_SIZE = 10;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int[] log;
+    /**
+     * Total number of ints ever written. The int at position p is stored at log[p % log.length].
+     */
+    private long write_pos;
+    /**
+     * Highest write_pos so far. Rewinding moves write_pos back, but the ints between were already
+     * overwritten, so only positions from high_water - log.length on are still valid.
+     */
+    private long high_water;
+
+    private final int snapshot_interval;
+    private final GameBoard.Snapshot[] snapshots;
+    private final long[] snapshot_pos;
+    private int num_snapshots;
+    private int next_snapshot;
+
+    public RewindBuffer(int log_size, int snapshot_interval, int max_snapshots) {
+        this.log = new int[log_size];
+        this.snapshot_interval = snapshot_interval;
+        this.snapshots = new GameBoard.Snapshot[max_snapshots];
+        this.snapshot_pos = new long[max_snapshots];
+    }
+
+    /**
+     * Forgets the whole history, e.g. when a new game starts.
+     */
+    public void clear() {
+        write_pos = 0;
+        high_water = 0;
+        num_snapshots = 0;
+        next_snapshot = 0;
+    }
+
+    private void put(int value) {
+        log[(int) (write_pos++ % log.length)] = value;
+        high_water = Math.max(high_water, write_pos);
+    }
+
+    private int get(long pos) {
+        return log[(int) (pos % log.length)];
+    }
+
+    void log_cell(int index, int value) {
+        put(CELL);
+        put(index);
+        put(value);
+    }
+
+    void log_push(int index) {
+        put(PUSH);
+        put(index);
+    }
+
+    void log_pop() {
+        put(POP);
+    }
+
+    /**
+     * Marks the start of a tick with the values of the board before the movement. Takes a
+     * snapshot first if the tick is a multiple of the snapshot interval.
+     */
+    void log_frame(GameBoard game_board, int ticks, int curr_pos_x, int curr_pos_y,
+        Direction direction, int points, int steps_done, int num_apples, long rng_state) {
+        if (ticks % snapshot_interval == 0) {
+            int slot = next_snapshot;
+            int latest = (next_snapshot + snapshots.length - 1) % snapshots.length;
+            if (num_snapshots > 0 && snapshots[latest].get_ticks() == ticks) {
+                slot = latest;
+            } else {
+                next_snapshot = (next_snapshot + 1) % snapshots.length;
+                num_snapshots = Math.min(num_snapshots + 1, snapshots.length);
+            }
+            snapshots[slot] = game_board.snapshot();
+            snapshot_pos[slot] = write_pos;
+        }
+        put(FRAME);
+        put(ticks);
+        put(curr_pos_x);
+        put(curr_pos_y);
+        put(direction.ordinal());
+        put(points);
+        put(steps_done);
+        put(num_apples);
+        put((int) (rng_state >>> 32));
+        put((int) rng_state);
+    }
+
+    /**
+     * Returns the index of the latest snapshot whose records are still in the log and which was
+     * taken at the tick or earlier, -1 if there is none.
+     */
+    private int find_snapshot(int tick) {
+        int best = -1;
+        for (int i = 0; i < num_snapshots; i++) {
+            int slot = (next_snapshot + snapshots.length - 1 - i) % snapshots.length;
+            if (snapshot_pos[slot] < high_water - log.length) {
+                break;
+            }
+            if (snapshots[slot].get_ticks() <= tick) {
+                best = slot;
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the first tick which can still be rewound to, -1 if there is none.
+     */
+    public int get_oldest_tick() {
+        int oldest = -1;
+        for (int i = 0; i < num_snapshots; i++) {
+            int slot = (next_snapshot + snapshots.length - 1 - i) % snapshots.length;
+            if (snapshot_pos[slot] < high_water - log.length) {
+                break;
+            }
+            oldest = snapshots[slot].get_ticks();
+        }
+        return oldest;
+    }
+
+    /**
+     * Puts the board into the state it had at the start of the given tick. The history after that
+     * tick is dropped. Returns false if the tick is no longer (or not yet) in the buffer. The board
+     * must not log into this buffer while it is rewound.
+     */
+    boolean rewind_to(GameBoard game_board, int tick) {
+        if (tick < 0 || tick >= game_board.get_ticks()) {
+            return false;
+        }
+        int slot = find_snapshot(tick);
+        if (slot == -1) {
+            return false;
+        }
+        game_board.restore(snapshots[slot]);
+        long pos = snapshot_pos[slot];
+        while (pos < write_pos) {
+            switch (get(pos)) {
+                case CELL:
+                    game_board.redo_cell(get(pos + 1), get(pos + 2));
+                    pos += CELL_SIZE;
+                    break;
+                case PUSH:
+                    game_board.redo_push(get(pos + 1));
+                    pos += PUSH_SIZE;
+                    break;
+                case POP:
+                    game_board.redo_pop();
+                    pos += POP_SIZE;
+                    break;
+                case FRAME:
+                    if (get(pos + 1) == tick) {
+                        long rng_state = ((long) get(pos + 8) << 32) | (get(pos + 9) & 0xFFFFFFFFL);
+                        game_board.redo_frame(tick, get(pos + 2), get(pos + 3),
+                            DIRECTIONS[get(pos + 4)], get(pos + 5), get(pos + 6), get(pos + 7),
+                            rng_state);
+                        drop_after(pos, tick);
+                        return true;
+                    }
+                    pos += FRAME_SIZE;
+                    break;
+                default:
+                    // cannot happen as long as the snapshot is valid
+                    System.err.println("@rewind_to: corrupt record");
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops all records from the frame at pos on and all snapshots taken after the tick.
+     */
+    private void drop_after(long pos, int tick) {
+        write_pos = pos;
+        while (num_snapshots > 0) {
+            int latest = (next_snapshot + snapshots.length - 1) % snapshots.length;
+            if (snapshots[latest].get_ticks() <= tick) {
+                break;
+            }
+            snapshots[latest] = null;
+            next_snapshot = latest;
+            num_snapshots--;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package src.mainclasses;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Frame;
+import java.time.LocalDate;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+import src.utilityclasses.LeaderboardStats;
+
+/**
+ * Window with the statistics of the leaderboard per player and level and the games of the
+ * last days. The statistics are kept up to date by the leaderboard, so the window only shows
+ * them.
+ */
+public class StatsView extends JDialog {
+
+    private static final String[] COLUMN_NAMES = {"Name", "Games", "Mean", "Best", "Median",
+        "95th Percentile", "Games (" + LeaderboardStats.DAYS + " days)"};
+
+    public StatsView(Frame owner, LeaderboardStats stats) {
+        super(owner, "Statistics", false);
+        LeaderboardStats.Summary all = stats.get_all();
+        JLabel lbl_all = new JLabel((all.games == 0) ? "No games yet"
+            : String.format("%d games, mean %.1f, best %d, median %d, 95th percentile %d",
+                all.games, all.mean, all.best, all.median, all.p95));
+        lbl_all.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+
+        JTabbedPane tabbed_pane = new JTabbedPane();
+        tabbed_pane.addTab("Players", new JScrollPane(create_table(stats.get_players())));
+        tabbed_pane.addTab("Levels", new JScrollPane(create_table(stats.get_levels())));
+        tabbed_pane.addTab("Activity", new JScrollPane(create_activity_table(all)));
+
+        getContentPane().add(lbl_all, BorderLayout.NORTH);
+        getContentPane().add(tabbed_pane, BorderLayout.CENTER);
+        setPreferredSize(new Dimension(700, 400));
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    private static JTable create_table(List<LeaderboardStats.Summary> summaries) {
+        DefaultTableModel model = new DefaultTableModel(COLUMN_NAMES, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for (LeaderboardStats.Summary summary : summaries) {
+            model.addRow(new Object[]{summary.name, summary.games,
+                String.format("%.1f", summary.mean), summary.best, summary.median, summary.p95,
+                summary.get_recent_games()});
+        }
+        return new JTable(model);
+    }
+
+    private static JTable create_activity_table(LeaderboardStats.Summary all) {
+        DefaultTableModel model = new DefaultTableModel(new String[]{"Day", "Games"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        LocalDate today = LocalDate.now();
+        for (int i = all.daily.length - 1; i >= 0; i--) {
+            model.addRow(new Object[]{today.minusDays(all.daily.length - 1 - i),
+                all.daily[i]});
+        }
+        return new JTable(model);
+    }
+}
@@ -0,0 +1,165 @@
+package src.mainclasses;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import src.botclasses.Bot;
+import src.botclasses.HamiltonianBot;
+import src.botclasses.PathfindingBot;
+import src.gameclasses.Level;
+import src.gameclasses.LevelRating;
+import src.utilityclasses.LevelRatingSerializer;
+import src.utilityclasses.LevelSerializer;
+
+/**
+ * Offline tool which estimates the difficulty of levels. Every registered bot plays every level
+ * with a number of seeds on headless GameBoards; the games are independent of each other, so they
+ * run in parallel on all cores. The scores and survival lengths are aggregated per level into a
+ * LevelRating which is stored in 'level_ratings.dat'.
+ * <p>
+ * The difficulty is 100 minus the mean share of the free spots the bots filled with snake, so it
+ * does not depend on the size of the level.
+ * <p>
+ * Usage: Tournament [seeds], the number of seeds per bot and level defaults to 16.
+ */
+public class Tournament {
+
+    /**
+     * A game is stopped after this many ticks per spot of the level, e.g. if a bot circles
+     * without reaching the apple.
+     */
+    private static final int MAX_TICKS_PER_SPOT = 32;
+
+    private final Map<String, Supplier<Bot>> bots = new LinkedHashMap<>();
+
+    public static void main(String[] args) {
+        int seeds = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+        Tournament tournament = new Tournament();
+        tournament.register("Pathfinding", PathfindingBot::new);
+        tournament.register("Hamiltonian", HamiltonianBot::new);
+
+        Map<String, Level> levels = LevelSerializer.get_all_levels();
+        long start = System.nanoTime();
+        Map<String, LevelRating> ratings = tournament.run(levels, seeds);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        ratings.values().stream()
+            .sorted((a, b) -> Integer.compare(b.difficulty, a.difficulty))
+            .forEach(rating -> System.out.println("[Tournament] " + rating));
+        int games = levels.size() * seeds * tournament.bots.size();
+        System.out.println(String.format("[Tournament] %d levels, %d games, %.2f s (%.0f games/s)",
+            levels.size(), games, seconds, games / Math.max(seconds, 1e-9)));
+        LevelRatingSerializer.add_ratings(ratings);
+    }
+
+    /**
+     * Registers a bot. The supplier is called once per game, so the bots need not be thread-safe.
+     */
+    public void register(String name, Supplier<Bot> bot) {
+        bots.put(name, bot);
+    }
+
+    /**
+     * Plays every registered bot on every level with the seeds 0 to seeds - 1 and returns the
+     * ratings as a Map of level name to LevelRating.
+     */
+    public Map<String, LevelRating> run(Map<String, Level> levels, int seeds) {
+        List<Game> games = new ArrayList<>();
+        for (Map.Entry<String, Level> entry : levels.entrySet()) {
+            for (Supplier<Bot> bot : bots.values()) {
+                for (int seed = 0; seed < seeds; seed++) {
+                    games.add(new Game(entry.getKey(), entry.getValue(), bot, seed));
+                }
+            }
+        }
+        games.parallelStream().forEach(Game::play);
+
+        Map<String, List<Game>> by_level = games.stream()
+            .collect(Collectors.groupingBy(game -> game.level_name));
+        Map<String, LevelRating> ratings = new LinkedHashMap<>();
+        by_level.forEach((name, level_games) -> ratings.put(name, rate(name, level_games)));
+        return ratings;
+    }
+
+    private static LevelRating rate(String name, List<Game> games) {
+        LevelRating rating = new LevelRating(name);
+        int[] scores = new int[games.size()];
+        double filled = 0;
+        long survival = 0;
+        int alive = 0;
+        for (int i = 0; i < scores.length; i++) {
+            Game game = games.get(i);
+            scores[i] = game.score;
+            filled += game.score / (double) Math.max(1, game.free_spots);
+            survival += game.ticks;
+            if (game.alive) {
+                alive++;
+            }
+        }
+        Arrays.sort(scores);
+        rating.games = scores.length;
+        rating.mean_score = Arrays.stream(scores).average().orElse(0);
+        rating.p10_score = percentile(scores, 10);
+        rating.median_score = percentile(scores, 50);
+        rating.p90_score = percentile(scores, 90);
+        rating.mean_survival = survival / (double) scores.length;
+        rating.survival_rate = alive / (double) scores.length;
+        rating.difficulty = (int) Math.round(100 * (1 - Math.min(1, filled / scores.length)));
+        return rating;
+    }
+
+    /**
+     * Nearest rank percentile of sorted values.
+     */
+    private static int percentile(int[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * One game of a bot on a level.
+     */
+    private static class Game {
+
+        private final String level_name;
+        private final Level level;
+        private final Supplier<Bot> bot;
+        private final long seed;
+
+        private int score;
+        private int ticks;
+        private int free_spots;
+        private boolean alive;
+
+        private Game(String level_name, Level level, Supplier<Bot> bot, long seed) {
+            this.level_name = level_name;
+            this.level = level;
+            this.bot = bot;
+            this.seed = seed;
+        }
+
+        private void play() {
+            GameBoard game_board = new GameBoard(level, seed);
+            Bot player = bot.get();
+            int spots = game_board.get_width() * game_board.get_height();
+            for (int i = 0; i < spots; i++) {
+                if (game_board.get_status(i) != 2) {
+                    free_spots++;
+                }
+            }
+            // the snake occupies two spots at the start
+            free_spots -= 2;
+            int max_ticks = spots * MAX_TICKS_PER_SPOT;
+            alive = true;
+            while (alive && game_board.get_ticks() < max_ticks) {
+                alive = game_board.try_movement(player.next_move(game_board));
+            }
+            score = game_board.getPoints();
+            ticks = game_board.get_ticks();
+        }
+    }
+}
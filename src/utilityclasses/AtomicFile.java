@@ -0,0 +1,164 @@
+package src.utilityclasses;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Files which are replaced as a whole and never seen half written, e.g. 'settings.dat'.
+ * <p>
+ * A file is written to '[name].tmp', forced to the disk and renamed over the file, after the
+ * file it replaces was renamed to '[name].1'. Every file starts with a header of int MAGIC, int
+ * VERSION, long generation (one more with every write), int length and int CRC32 of the data.
+ * Reading takes the file or '[name].1', whichever is whole and of the later generation, so a
+ * crash at any point leaves the last or the one before last version.
+ * <p>
+ * Files of older versions, which are only Java serialized data, are read as they are and get a
+ * header when they are written the next time.
+ */
+public class AtomicFile {
+
+    public static final int MAGIC = 0x534E4146;
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String PREVIOUS_SUFFIX = ".1";
+    /**
+     * First bytes of Java serialized data (STREAM_MAGIC, STREAM_VERSION).
+     */
+    private static final int SERIALIZED_MAGIC = 0xACED0005;
+
+    /**
+     * Data of a file and its generation, 0 for a file of an older version.
+     */
+    private static class Version {
+
+        private final byte[] data;
+        private final long generation;
+
+        private Version(byte[] data, long generation) {
+            this.data = data;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Replaces the file by the data. The data is on the disk when the method returns.
+     */
+    public static synchronized void write(String file_name, byte[] data) throws IOException {
+        File file = new File(file_name);
+        File tmp_file = new File(file_name + TMP_SUFFIX);
+        File previous_file = new File(file_name + PREVIOUS_SUFFIX);
+        Version current = read_version(file);
+        Version previous = read_version(previous_file);
+        long generation = Math.max(generation_of(current), generation_of(previous)) + 1;
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        try (FileOutputStream file_stream = new FileOutputStream(tmp_file)) {
+            DataOutputStream output_stream = new DataOutputStream(file_stream);
+            output_stream.writeInt(MAGIC);
+            output_stream.writeInt(VERSION);
+            output_stream.writeLong(generation);
+            output_stream.writeInt(data.length);
+            output_stream.writeInt((int) crc.getValue());
+            output_stream.write(data);
+            output_stream.flush();
+            file_stream.getFD().sync();
+        }
+        // a broken file is not kept in place of the whole one before it
+        if (current != null) {
+            Files.move(file.toPath(), previous_file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(tmp_file.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        sync_directory(file.toPath());
+    }
+
+    /**
+     * Returns the data of the latest whole version of the file.
+     *
+     * @throws FileNotFoundException if there is no version
+     * @throws IOException           if no version is whole
+     */
+    public static byte[] read(String file_name) throws IOException {
+        File file = new File(file_name);
+        File previous_file = new File(file_name + PREVIOUS_SUFFIX);
+        if (!file.exists() && !previous_file.exists()) {
+            throw new FileNotFoundException(file_name + " (No such file or directory)");
+        }
+        Version current = read_version(file);
+        Version previous = read_version(previous_file);
+        if (current != null && generation_of(current) >= generation_of(previous)) {
+            return current.data;
+        }
+        if (previous == null) {
+            throw new IOException(file_name + " is broken and there is no previous version");
+        }
+        System.out.println("[Load] " + file_name + " is broken or older, read generation "
+            + previous.generation + " of " + previous_file);
+        return previous.data;
+    }
+
+    private static long generation_of(Version version) {
+        return (version == null) ? -1 : version.generation;
+    }
+
+    /**
+     * Reads a version of a file, returns null if it does not exist or is broken.
+     */
+    private static Version read_version(File file) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length >= Integer.BYTES && buffer.getInt(0) == SERIALIZED_MAGIC) {
+            return new Version(bytes, 0);
+        }
+        if (bytes.length < HEADER_SIZE || buffer.getInt() != MAGIC
+            || buffer.getInt() != VERSION) {
+            return null;
+        }
+        long generation = buffer.getLong();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length != bytes.length - HEADER_SIZE) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, length);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        System.arraycopy(bytes, HEADER_SIZE, data, 0, length);
+        return new Version(data, generation);
+    }
+
+    /**
+     * Forces the directory of a file, so a rename of the file is on the disk as well. Does
+     * nothing where directories cannot be opened (Windows).
+     */
+    public static void sync_directory(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported by the file system
+        }
+    }
+}
@@ -1,108 +1,540 @@
 package src.utilityclasses;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The leaderboard tracks stats of individual played game to display after a game has finished.
  * Keeps track of name, score, date, speed setting, level and game mode.
+ * <p>
+ * Entries are stored in the format of LeaderboardCodec. A new entry is appended to the current
+ * journal 'lb.[generation].journal' by the PersistenceWriter, one small write no matter how many
+ * games were played.
+ * After SNAPSHOT_INTERVAL entries the next journal is started and a background thread merges
+ * the full journals into the snapshot 'lb.snapshot', whose entries are sorted by score. The
+ * snapshot tells the last generation it contains, so journals which were merged but not deleted
+ * yet (e.g. after a crash) are not counted twice. The Java serialized 'lb.dat' of older versions
+ * is migrated once into a snapshot.
+ * <p>
+ * The files are read once; after that entries are found through the LeaderboardIndex. For
+ * aggregates the entries are also kept as running LeaderboardStats per player and level, and
+ * as memory-mapped LeaderboardColumns, which are only written when they are asked for.
  */
 public class Leaderboard {
 
     // Util
     private static final String LEADERBOARD_FILE = "lb.dat";
+    private static final String SNAPSHOT_FILE = "lb.snapshot";
+    private static final String SNAPSHOT_TMP_FILE = "lb.snapshot.tmp";
+    private static final String JOURNAL_PREFIX = "lb.";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String COLUMNS_FILE = "lb.columns";
+    private static final String DICTIONARY_FILE = "lb.dictionary";
     /**
-     * Leaderboard is stored as a list of serializable LeaderboardEntrys.
+     * Number of entries after which a journal is merged into the snapshot.
      */
-    private List<LeaderboardEntry> all_entries = new ArrayList<>();
-    private Comparator<LeaderboardEntry> score_comparator = (LeaderboardEntry entry1, LeaderboardEntry entry2) -> Integer
+    private static final int SNAPSHOT_INTERVAL = 1024;
+    /**
+     * Sorts by score, highest first. The sort is stable, so equal scores keep the order in which
+     * they were played.
+     */
+    private static final Comparator<LeaderboardEntry> score_comparator = (LeaderboardEntry entry1, LeaderboardEntry entry2) -> Integer
         .compare(entry2.getScore(), entry1.getScore());
 
-    // Streams
-    private ObjectOutputStream output_stream = null;
-    private ObjectInputStream input_stream = null;
+    /**
+     * Generation of the journal new entries are appended to, -1 until the files were read.
+     */
+    private static long generation = -1;
+    private static int journal_records;
+    /**
+     * Entries added but not yet appended to the journal.
+     */
+    private static final List<LeaderboardEntry> unwritten = new ArrayList<>();
+    /**
+     * All entries, built from the files when first asked for and kept up to date by add_entry.
+     */
+    private static LeaderboardIndex index;
+    /**
+     * The entries as columns for aggregates, opened by get_columns(); null if they were not
+     * asked for yet or could not be mapped. Guarded by columns_lock.
+     */
+    private static LeaderboardColumns columns;
+    private static final Object columns_lock = new Object();
+    private static LeaderboardStats stats;
+    private static final ExecutorService snapshotter = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "Leaderboard snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /**
+     * Creates a leaderboard and starts reading the files in the background, so the index is
+     * ready when the scoreboard is shown first.
+     */
+    public Leaderboard() {
+        snapshotter.execute(Leaderboard::get_index);
+    }
 
     /**
-     * Loads the leaderboard returns it as a List of LeaderboardEntrys.
+     * Returns all entries as a List of LeaderboardEntrys sorted by score.
      */
     public List<LeaderboardEntry> get_lb_list() {
-        load_file();
-        all_entries.sort(score_comparator);
-        return all_entries;
+        return query().get_entries();
+    }
+
+    /**
+     * Starts a query on the entries.
+     */
+    public LeaderboardQuery query() {
+        return new LeaderboardQuery(get_index());
     }
 
     /**
-     * Loads the leaderboard, adds an entry and saves the new file.
+     * Returns the index of all entries, reading the files the first time.
      */
-    public void add_entry(String player_name, int game_score, String date, String speed_setting,
-        String level_name, String game_mode) {
-        load_file();
-        all_entries.add(
-            new LeaderboardEntry(player_name, game_score, date, speed_setting, level_name,
-                game_mode));
-        update_file();
+    private static synchronized LeaderboardIndex get_index() {
+        if (index == null) {
+            List<LeaderboardEntry> entries = load_entries();
+            index = new LeaderboardIndex(entries);
+            stats = new LeaderboardStats(entries);
+        }
+        return index;
     }
 
     /**
-     * Uses Object Streams to load the leaderboard file 'lb.dat'.
+     * Returns the statistics per player and level, which are kept up to date on every entry.
      */
-    private void load_file() {
+    public LeaderboardStats get_stats() {
+        get_index();
+        return stats;
+    }
+
+    /**
+     * Returns the memory-mapped columns of the entries for aggregates like the best score of
+     * every level, or null if they could not be mapped. add_entry does not write the columns;
+     * they are written again here if entries were added since the last call.
+     */
+    public LeaderboardColumns get_columns() {
+        List<LeaderboardEntry> entries = get_lb_list();
+        synchronized (columns_lock) {
+            if (columns == null || columns.size() != entries.size()) {
+                try {
+                    columns = LeaderboardColumns.open(COLUMNS_FILE, DICTIONARY_FILE, entries);
+                } catch (IOException e) {
+                    System.out.println("[Load] IO Error: " + e.getMessage());
+                    columns = null;
+                }
+            }
+            return columns;
+        }
+    }
+
+    /**
+     * Adds an entry, which is appended to the journal by the PersistenceWriter. The entry is in
+     * get_lb_list() at once; the returned future completes when it is on the disk. An entry
+     * too long for a record (see LeaderboardCodec) is not added.
+     */
+    public CompletableFuture<Void> add_entry(String player_name, int game_score, String date,
+        String speed_setting, String level_name, String game_mode) {
+        LeaderboardEntry entry = new LeaderboardEntry(player_name, game_score, date,
+            speed_setting, level_name, game_mode);
         try {
-            input_stream = new ObjectInputStream(new FileInputStream(LEADERBOARD_FILE));
-            all_entries = (List<LeaderboardEntry>) input_stream.readObject();
-        } catch (FileNotFoundException e) {
-            System.out.println("[Load] FNF Error: " + e.getMessage());
-        } catch (IOException e) {
-            System.out.println("[Load] IO Error: " + e.getMessage());
-        } catch (ClassNotFoundException e) {
-            System.out.println("[Load] CNF Error: " + e.getMessage());
-        } finally {
-            try {
+            LeaderboardCodec.encode(entry);
+        } catch (IllegalArgumentException e) {
+            System.out.println("[Update] Error: " + e.getMessage());
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        synchronized (Leaderboard.class) {
+            unwritten.add(entry);
+            if (index != null) {
+                index.add(entry);
+                stats.add(entry);
+            }
+        }
+        // submit waits while the queue is full, and the writer takes the lock of the class
+        return PersistenceWriter.submit(LEADERBOARD_FILE, Leaderboard::write_unwritten);
+    }
 
-                if (output_stream != null) {
-                    output_stream.flush();
-                    output_stream.close();
+    private static synchronized List<LeaderboardEntry> load_entries() {
+        open_files();
+        long snapshot_generation = read_generation(SNAPSHOT_FILE);
+        List<LeaderboardEntry> recent = new ArrayList<>();
+        for (long journal : get_journals()) {
+            if (journal > snapshot_generation) {
+                recent.addAll(read_records(journal_file(journal)));
+            }
+        }
+        recent.addAll(unwritten);
+        recent.sort(score_comparator);
+        List<LeaderboardEntry> snapshot = read_records(new File(SNAPSHOT_FILE));
+        List<LeaderboardEntry> entries = new ArrayList<>(snapshot.size() + recent.size());
+        int j = 0;
+        for (LeaderboardEntry entry : snapshot) {
+            while (j < recent.size() && score_comparator.compare(recent.get(j), entry) < 0) {
+                entries.add(recent.get(j++));
+            }
+            entries.add(entry);
+        }
+        entries.addAll(recent.subList(j, recent.size()));
+        return entries;
+    }
+
+    /**
+     * Appends the unwritten entries to the journal with one write, starting the next journal
+     * when one is full. Returns the journal to force to the disk.
+     */
+    private static synchronized Path write_unwritten() throws IOException {
+        open_files();
+        Path written = null;
+        while (!unwritten.isEmpty()) {
+            File file = journal_file(generation);
+            int count = Math.min(unwritten.size(), SNAPSHOT_INTERVAL - journal_records);
+            try (FileOutputStream output_stream = new FileOutputStream(file, true)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                if (file.length() == 0) {
+                    LeaderboardCodec.write_file_header(new DataOutputStream(bytes), generation);
                 }
+                for (LeaderboardEntry entry : unwritten.subList(0, count)) {
+                    bytes.write(LeaderboardCodec.encode(entry));
+                }
+                output_stream.write(bytes.toByteArray());
+                if (journal_records + count >= SNAPSHOT_INTERVAL) {
+                    // the snapshot thread expects full journals on the disk
+                    output_stream.getFD().sync();
+                }
+            }
+            unwritten.subList(0, count).clear();
+            written = file.toPath();
+            journal_records += count;
+            if (journal_records >= SNAPSHOT_INTERVAL) {
+                long full = generation++;
+                journal_records = 0;
+                snapshotter.execute(() -> snapshot(full));
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Reads the generations of the files once: migrates 'lb.dat' if there is neither snapshot nor
+     * journal, cuts a broken record at the end of the current journal and merges journals which
+     * are full already.
+     */
+    private static void open_files() {
+        if (generation != -1) {
+            return;
+        }
+        List<Long> journals = get_journals();
+        if (!new File(SNAPSHOT_FILE).exists() && journals.isEmpty()
+            && new File(LEADERBOARD_FILE).exists()) {
+            migrate_legacy_file();
+        }
+        long snapshot_generation = read_generation(SNAPSHOT_FILE);
+        generation = snapshot_generation + 1;
+        for (long journal : journals) {
+            generation = Math.max(generation, journal);
+        }
+        journal_records = repair(journal_file(generation));
+        if (generation - 1 > snapshot_generation) {
+            long full = generation - 1;
+            snapshotter.execute(() -> snapshot(full));
+        }
+    }
 
+    /**
+     * Merges the snapshot and the journals up to a generation into a new snapshot, reading the
+     * old snapshot as a stream, and deletes the merged journals.
+     */
+    private static void snapshot(long up_to) {
+        long snapshot_generation;
+        List<Long> journals = new ArrayList<>();
+        synchronized (Leaderboard.class) {
+            snapshot_generation = read_generation(SNAPSHOT_FILE);
+            for (long journal : get_journals()) {
+                if (journal <= up_to) {
+                    journals.add(journal);
+                }
+            }
+        }
+        if (up_to <= snapshot_generation) {
+            return;
+        }
+        // full journals are never written again, no lock needed
+        List<LeaderboardEntry> recent = new ArrayList<>();
+        for (long journal : journals) {
+            if (journal > snapshot_generation) {
+                recent.addAll(read_records(journal_file(journal)));
+            }
+        }
+        recent.sort(score_comparator);
+        int count = 0;
+        try (FileOutputStream file_stream = new FileOutputStream(SNAPSHOT_TMP_FILE);
+            DataOutputStream output_stream = new DataOutputStream(
+                new BufferedOutputStream(file_stream))) {
+            LeaderboardCodec.write_file_header(output_stream, up_to);
+            int j = 0;
+            if (new File(SNAPSHOT_FILE).exists()) {
+                try (DataInputStream input_stream = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(SNAPSHOT_FILE)))) {
+                    LeaderboardCodec.read_file_header(input_stream);
+                    byte[] record;
+                    while ((record = LeaderboardCodec.read_record(input_stream)) != null) {
+                        LeaderboardEntry entry;
+                        try {
+                            entry = LeaderboardCodec.decode(record, 0);
+                        } catch (IOException e) {
+                            System.out.println("[Snapshot] Dropped " + e.getMessage());
+                            continue;
+                        }
+                        while (j < recent.size()
+                            && score_comparator.compare(recent.get(j), entry) < 0) {
+                            output_stream.write(LeaderboardCodec.encode(recent.get(j++)));
+                            count++;
+                        }
+                        output_stream.write(record);
+                        count++;
+                    }
+                }
+            }
+            for (; j < recent.size(); j++, count++) {
+                output_stream.write(LeaderboardCodec.encode(recent.get(j)));
+            }
+            output_stream.flush();
+            file_stream.getFD().sync();
+        } catch (IOException e) {
+            System.out.println("[Snapshot] IO Error: " + e.getMessage());
+            return;
+        }
+        synchronized (Leaderboard.class) {
+            try {
+                Files.move(new File(SNAPSHOT_TMP_FILE).toPath(), new File(SNAPSHOT_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                // the new snapshot must be on the disk before the journals are gone
+                AtomicFile.sync_directory(new File(SNAPSHOT_FILE).toPath());
             } catch (IOException e) {
-                System.out.println("[Load] IO Error: " + e.getMessage());
+                System.out.println("[Snapshot] IO Error: " + e.getMessage());
+                return;
+            }
+            for (long journal : journals) {
+                journal_file(journal).delete();
             }
         }
+        System.out.println("[Snapshot] " + count + " entries up to generation " + up_to);
+    }
+
+    private static File journal_file(long journal) {
+        return new File(JOURNAL_PREFIX + journal + JOURNAL_SUFFIX);
     }
 
     /**
-     * Uses Object Streams to store the leaderboard file to 'lb.dat'.
+     * Returns the generations of the journals in the working directory in ascending order.
      */
-    private void update_file() {
-        try {
-
-            output_stream = new ObjectOutputStream(new FileOutputStream(LEADERBOARD_FILE));
-            output_stream.writeObject(all_entries);
+    private static List<Long> get_journals() {
+        TreeSet<Long> journals = new TreeSet<>();
+        String[] names = new File(".").list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX)) {
+                    try {
+                        journals.add(Long.parseLong(name.substring(JOURNAL_PREFIX.length(),
+                            name.length() - JOURNAL_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not a journal
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(journals);
+    }
 
+    /**
+     * Returns the generation of a snapshot or journal file, 0 if there is no such file.
+     */
+    private static long read_generation(String file_name) {
+        try (DataInputStream input_stream = new DataInputStream(
+            new FileInputStream(file_name))) {
+            return LeaderboardCodec.read_file_header(input_stream);
         } catch (FileNotFoundException e) {
-            System.out.println(
-                "[Update] FNF Error: " + e.getMessage()
-                    + ",the program will try and make a new file");
+            return 0;
+        } catch (IOException e) {
+            System.out.println("[Load] IO Error: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Reads all records of a file, skipping broken ones. Reading stops at a record which ends
+     * after the file or whose size is broken, as the records after it cannot be found.
+     */
+    private static List<LeaderboardEntry> read_records(File file) {
+        List<LeaderboardEntry> entries = new ArrayList<>();
+        if (!file.exists()) {
+            return entries;
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+            LeaderboardCodec.read_file_header(new DataInputStream(
+                new ByteArrayInputStream(bytes)));
         } catch (IOException e) {
-            System.out.println("[Update] IO Error: " + e.getMessage());
-        } finally {
+            System.out.println("[Load] IO Error: " + e.getMessage());
+            return entries;
+        }
+        int offset = LeaderboardCodec.FILE_HEADER_SIZE;
+        while (offset + Integer.BYTES <= bytes.length) {
+            int size;
+            try {
+                size = LeaderboardCodec.get_size(bytes, offset);
+            } catch (IOException e) {
+                System.out.println("[Load] Dropped end of " + file.getName() + ": "
+                    + e.getMessage());
+                break;
+            }
+            if (offset + size > bytes.length) {
+                break;
+            }
             try {
+                entries.add(LeaderboardCodec.decode(bytes, offset));
+            } catch (IOException e) {
+                System.out.println("[Load] Dropped " + e.getMessage() + " in " + file.getName());
+            }
+            offset += size;
+        }
+        return entries;
+    }
 
-                if (output_stream != null) {
-                    output_stream.flush();
-                    output_stream.close();
+    /**
+     * Cuts a record which was only written in part (from a crash) off the end of a journal and
+     * returns the number of records left. Only the end is cut: a broken record followed by whole
+     * ones is kept, and skipped when the journal is read.
+     */
+    private static int repair(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile journal = new RandomAccessFile(file, "rw")) {
+            if (journal.length() < LeaderboardCodec.FILE_HEADER_SIZE) {
+                journal.setLength(0);
+                return 0;
+            }
+            byte[] bytes = new byte[(int) journal.length()];
+            journal.readFully(bytes);
+            int count = 0;
+            int offset = LeaderboardCodec.FILE_HEADER_SIZE;
+            // end of the last record which was read whole
+            int end = offset;
+            while (offset + Integer.BYTES <= bytes.length) {
+                int size;
+                try {
+                    size = LeaderboardCodec.get_size(bytes, offset);
+                } catch (IOException e) {
+                    break;
                 }
+                if (offset + size > bytes.length) {
+                    break;
+                }
+                try {
+                    LeaderboardCodec.decode(bytes, offset);
+                    end = offset + size;
+                } catch (IOException e) {
+                    // kept if a whole record follows
+                }
+                offset += size;
+                count++;
+            }
+            if (end != journal.length()) {
+                System.out.println("[Load] Dropped broken end of " + file.getName());
+                journal.setLength(end);
+                count = count_records(bytes, end);
+            }
+            return count;
+        } catch (IOException e) {
+            System.out.println("[Load] IO Error: " + e.getMessage());
+            return 0;
+        }
+    }
 
-            } catch (IOException e) {
-                System.out.println("[Update] Error: " + e.getMessage());
+    /**
+     * Number of records of a journal up to an offset at the end of a record.
+     */
+    private static int count_records(byte[] bytes, int end) throws IOException {
+        int count = 0;
+        for (int offset = LeaderboardCodec.FILE_HEADER_SIZE; offset < end;
+            offset += LeaderboardCodec.get_size(bytes, offset)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Uses Object Streams to load the legacy leaderboard file 'lb.dat' and stores its entries as
+     * the snapshot. The legacy file is kept.
+     */
+    private static void migrate_legacy_file() {
+        List<LeaderboardEntry> legacy_entries;
+        try (ObjectInputStream input_stream = new ObjectInputStream(
+            new FileInputStream(LEADERBOARD_FILE))) {
+            legacy_entries = (List<LeaderboardEntry>) input_stream.readObject();
+        } catch (IOException e) {
+            System.out.println("[Migrate] IO Error: " + e.getMessage());
+            return;
+        } catch (ClassNotFoundException e) {
+            System.out.println("[Migrate] CNF Error: " + e.getMessage());
+            return;
+        }
+        legacy_entries.sort(score_comparator);
+        try (FileOutputStream file_stream = new FileOutputStream(SNAPSHOT_TMP_FILE);
+            DataOutputStream output_stream = new DataOutputStream(
+                new BufferedOutputStream(file_stream))) {
+            LeaderboardCodec.write_file_header(output_stream, 0);
+            for (LeaderboardEntry entry : legacy_entries) {
+                try {
+                    output_stream.write(LeaderboardCodec.encode(entry));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("[Migrate] Error: " + e.getMessage() + " kept in "
+                        + LEADERBOARD_FILE);
+                }
             }
+            output_stream.flush();
+            file_stream.getFD().sync();
+        } catch (IOException e) {
+            System.out.println("[Migrate] IO Error: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(new File(SNAPSHOT_TMP_FILE).toPath(), new File(SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            AtomicFile.sync_directory(new File(SNAPSHOT_FILE).toPath());
+        } catch (IOException e) {
+            System.out.println("[Migrate] IO Error: " + e.getMessage());
+            return;
         }
+        System.out.println("[Migrate] " + legacy_entries.size() + " entries moved from "
+            + LEADERBOARD_FILE + " to " + SNAPSHOT_FILE);
     }
-}
\ No newline at end of file
+}
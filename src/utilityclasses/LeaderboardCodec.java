@@ -0,0 +1,169 @@
+package src.utilityclasses;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of leaderboard entries, which are appended to a file of entries with one small
+ * write each.
+ * <p>
+ * File: int MAGIC, short VERSION, short unused, long generation, then records up to the end of
+ * the file.
+ * <p>
+ * Record: int size of the record (including this int), int CRC32 of the rest of the record,
+ * int score, then the player name, date, speed setting, level name and game mode, each as int
+ * length in bytes (-1 for null) and UTF-8. Strings are stored whole; an entry whose record would
+ * be longer than MAX_RECORD_SIZE is rejected.
+ */
+public class LeaderboardCodec {
+
+    public static final int MAGIC = 0x534E4C42;
+    public static final short VERSION = 2;
+    public static final int FILE_HEADER_SIZE = 16;
+    public static final int MAX_RECORD_SIZE = 1 << 16;
+    private static final int CRC = 4;
+    /**
+     * Position of the score in a record, e.g. to search a file of records sorted by score.
+     */
+    static final int SCORE = 8;
+    private static final int STRINGS = 12;
+    private static final int MIN_RECORD_SIZE = STRINGS + 5 * Integer.BYTES;
+
+    public static void write_file_header(DataOutput out, long generation) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeLong(generation);
+    }
+
+    /**
+     * Reads the file header and returns the generation of the file.
+     */
+    public static long read_file_header(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a leaderboard file");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("unknown leaderboard version " + version);
+        }
+        in.readShort();
+        return in.readLong();
+    }
+
+    /**
+     * Encodes an entry into a record.
+     *
+     * @throws IllegalArgumentException if the record would be longer than MAX_RECORD_SIZE
+     */
+    public static byte[] encode(LeaderboardEntry entry) {
+        byte[][] strings = {get_bytes(entry.getPlayerName()), get_bytes(entry.getDate()),
+            get_bytes(entry.getSpeedSetting()), get_bytes(entry.getLevelName()),
+            get_bytes(entry.getGameMode())};
+        long size = MIN_RECORD_SIZE;
+        for (byte[] string : strings) {
+            size += (string == null) ? 0 : string.length;
+        }
+        if (size > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("leaderboard entry of " + size + " bytes");
+        }
+        ByteBuffer record = ByteBuffer.allocate((int) size);
+        record.putInt((int) size);
+        record.putInt(0);
+        record.putInt(entry.getScore());
+        for (byte[] string : strings) {
+            if (string == null) {
+                record.putInt(-1);
+            } else {
+                record.putInt(string.length);
+                record.put(string);
+            }
+        }
+        record.putInt(CRC, checksum(record.array(), 0, (int) size));
+        return record.array();
+    }
+
+    /**
+     * Returns the size of the record at an offset of a buffer, or throws an IOException if it
+     * cannot be the size of a record.
+     */
+    public static int get_size(byte[] buffer, int offset) throws IOException {
+        int size = ByteBuffer.wrap(buffer).getInt(offset);
+        if (size < MIN_RECORD_SIZE || size > MAX_RECORD_SIZE) {
+            throw new IOException("broken record size " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Reads the next record of a stream, or returns null at the end of the stream. Throws an
+     * EOFException if the stream ends within the record.
+     */
+    public static byte[] read_record(DataInputStream in) throws IOException {
+        int size;
+        try {
+            size = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] record = new byte[Integer.BYTES];
+        ByteBuffer.wrap(record).putInt(size);
+        record = Arrays.copyOf(record, get_size(record, 0));
+        in.readFully(record, Integer.BYTES, record.length - Integer.BYTES);
+        return record;
+    }
+
+    /**
+     * Decodes the record at an offset of a buffer, or throws an IOException if its checksum does
+     * not match (e.g. it was only written in part).
+     */
+    public static LeaderboardEntry decode(byte[] buffer, int offset) throws IOException {
+        int size = get_size(buffer, offset);
+        if (offset + size > buffer.length) {
+            throw new EOFException("record ends after the data");
+        }
+        ByteBuffer record = ByteBuffer.wrap(buffer, offset, size).slice();
+        if (record.getInt(CRC) != checksum(buffer, offset, size)) {
+            throw new IOException("broken record");
+        }
+        record.position(SCORE);
+        int score = record.getInt();
+        String[] strings = new String[5];
+        try {
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = get_string(record);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("broken record strings", e);
+        }
+        return new LeaderboardEntry(strings[0], score, strings[1], strings[2], strings[3],
+            strings[4]);
+    }
+
+    private static int checksum(byte[] buffer, int offset, int size) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer, offset + SCORE, size - SCORE);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] get_bytes(String value) {
+        return (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String get_string(ByteBuffer record) {
+        int length = record.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
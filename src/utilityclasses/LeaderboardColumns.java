@@ -0,0 +1,347 @@
+package src.utilityclasses;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leaderboard entries in a memory-mapped file with one column per stat, so aggregates read only
+ * the columns they need and no entry is loaded onto the heap.
+ * <p>
+ * File: int MAGIC, int VERSION, int capacity, int number of rows, up to HEADER_SIZE, then the
+ * columns, each capacity values long: int score, long time (milliseconds, Long.MIN_VALUE if the
+ * date could not be read), and int codes of player, level, game mode and speed setting. When
+ * the file is full it is extended to twice the capacity and the columns are moved to their new
+ * offsets in place. The file is never deleted or replaced, as a mapped file cannot be on
+ * Windows and Java cannot unmap it.
+ * <p>
+ * The codes are indexes into the dictionaries of their column, which are appended to a second
+ * file as records of byte column and UTF value. The number of rows in the header is only
+ * written after the rows are on the disk; the files are written again from the leaderboard if
+ * it does not match.
+ */
+public class LeaderboardColumns {
+
+    public static final int MAGIC = 0x534E4C43;
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int SCORE = 0;
+    private static final int TIME = 1;
+    private static final int PLAYER = 2;
+    private static final int LEVEL = 3;
+    private static final int MODE = 4;
+    private static final int SPEED = 5;
+    private static final int[] WIDTHS = {Integer.BYTES, Long.BYTES, Integer.BYTES, Integer.BYTES,
+        Integer.BYTES, Integer.BYTES};
+    private static final String DATE_FORMAT = "dd/MM/yyyy HH:mm";
+
+    private final String file_name;
+    private final String dictionary_name;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int rows;
+    /**
+     * Values and codes of the dictionaries of the columns PLAYER to SPEED.
+     */
+    private final List<List<String>> values = new ArrayList<>();
+    private final List<Map<String, Integer>> codes = new ArrayList<>();
+    private final SimpleDateFormat date_format = new SimpleDateFormat(DATE_FORMAT);
+    /**
+     * Open while the files are written again, so new values do not open the dictionary each.
+     */
+    private DataOutputStream dictionary_stream;
+
+    private LeaderboardColumns(String file_name, String dictionary_name) {
+        this.file_name = file_name;
+        this.dictionary_name = dictionary_name;
+        date_format.setLenient(false);
+        for (int column = PLAYER; column <= SPEED; column++) {
+            values.add(new ArrayList<>());
+            codes.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Maps the files, or writes them again from all entries of the leaderboard if they do not
+     * hold the same number of entries.
+     */
+    static LeaderboardColumns open(String file_name, String dictionary_name,
+        List<LeaderboardEntry> entries) throws IOException {
+        LeaderboardColumns existing = new LeaderboardColumns(file_name, dictionary_name);
+        if (existing.map_existing() && existing.rows == entries.size()) {
+            return existing;
+        }
+        // written again in place, the file may be mapped by existing or an older instance
+        LeaderboardColumns columns = new LeaderboardColumns(file_name, dictionary_name);
+        columns.map(new File(file_name), Math.max(Math.max(INITIAL_CAPACITY, existing.capacity),
+            Integer.highestOneBit(Math.max(1, entries.size())) * 2));
+        columns.buffer.putInt(12, 0);
+        columns.buffer.force();
+        try (DataOutputStream dictionary_stream = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(dictionary_name)))) {
+            columns.dictionary_stream = dictionary_stream;
+            for (LeaderboardEntry entry : entries) {
+                columns.add(entry);
+            }
+        } finally {
+            columns.dictionary_stream = null;
+        }
+        columns.commit();
+        System.out.println("[Columns] " + entries.size() + " entries written to " + file_name);
+        return columns;
+    }
+
+    private boolean map_existing() throws IOException {
+        File file = new File(file_name);
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile header = new RandomAccessFile(file, "r")) {
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                return false;
+            }
+            capacity = header.readInt();
+            rows = header.readInt();
+        }
+        if (file.length() < offset(WIDTHS.length) || rows > capacity) {
+            return false;
+        }
+        if (!read_dictionaries()) {
+            return false;
+        }
+        map(file, capacity);
+        return true;
+    }
+
+    private boolean read_dictionaries() throws IOException {
+        if (!new File(dictionary_name).exists()) {
+            return rows == 0;
+        }
+        try (DataInputStream input_stream = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(dictionary_name)))) {
+            while (true) {
+                int column;
+                try {
+                    column = input_stream.readByte();
+                } catch (EOFException e) {
+                    return true;
+                }
+                if (column < PLAYER || column > SPEED) {
+                    return false;
+                }
+                String value = input_stream.readUTF();
+                codes.get(column - PLAYER).put(value, values.get(column - PLAYER).size());
+                values.get(column - PLAYER).add(value);
+            }
+        } catch (EOFException e) {
+            // value written in part
+            return false;
+        }
+    }
+
+    /**
+     * Maps the file at the size of the capacity, extending it if it is shorter.
+     */
+    private void map(File file, int capacity) throws IOException {
+        this.capacity = capacity;
+        try (RandomAccessFile mapped_file = new RandomAccessFile(file, "rw")) {
+            if (mapped_file.length() < offset(WIDTHS.length)) {
+                mapped_file.setLength(offset(WIDTHS.length));
+            }
+            buffer = mapped_file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                offset(WIDTHS.length));
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, capacity);
+    }
+
+    /**
+     * Offset of the first value of a column.
+     */
+    private long offset(int column) {
+        long offset = HEADER_SIZE;
+        for (int i = 0; i < column; i++) {
+            offset += (long) WIDTHS[i] * capacity;
+        }
+        return offset;
+    }
+
+    private int position(int column, int row) {
+        return (int) (offset(column) + (long) WIDTHS[column] * row);
+    }
+
+    synchronized void add(LeaderboardEntry entry) throws IOException {
+        if (rows == capacity) {
+            grow();
+        }
+        buffer.putInt(position(SCORE, rows), entry.getScore());
+        buffer.putLong(position(TIME, rows), parse_time(entry.getDate()));
+        buffer.putInt(position(PLAYER, rows), encode(PLAYER, entry.getPlayerName()));
+        buffer.putInt(position(LEVEL, rows), encode(LEVEL, entry.getLevelName()));
+        buffer.putInt(position(MODE, rows), encode(MODE, entry.getGameMode()));
+        buffer.putInt(position(SPEED, rows), encode(SPEED, entry.getSpeedSetting()));
+        rows++;
+    }
+
+    /**
+     * Forces the rows to the disk and then writes their number into the header. Returns the
+     * dictionary file, which is left to the caller to force.
+     */
+    Path commit() {
+        MappedByteBuffer forced;
+        int forced_rows;
+        synchronized (this) {
+            forced = buffer;
+            forced_rows = rows;
+        }
+        // without the lock, so rows can be added meanwhile
+        forced.force();
+        synchronized (this) {
+            buffer.putInt(12, forced_rows);
+        }
+        return new File(dictionary_name).toPath();
+    }
+
+    private int encode(int column, String value) throws IOException {
+        String key = (value == null) ? "" : value;
+        Integer code = codes.get(column - PLAYER).get(key);
+        if (code == null) {
+            if (dictionary_stream != null) {
+                dictionary_stream.writeByte(column);
+                dictionary_stream.writeUTF(key);
+            } else {
+                try (DataOutputStream output_stream = new DataOutputStream(
+                    new FileOutputStream(dictionary_name, true))) {
+                    output_stream.writeByte(column);
+                    output_stream.writeUTF(key);
+                }
+            }
+            code = values.get(column - PLAYER).size();
+            codes.get(column - PLAYER).put(key, code);
+            values.get(column - PLAYER).add(key);
+        }
+        return code;
+    }
+
+    private long parse_time(String date) {
+        try {
+            return date_format.parse(date).getTime();
+        } catch (ParseException | NullPointerException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Extends the file to twice the capacity and moves the columns, the last one first, to
+     * their new offsets. The number of rows in the header is 0 until the columns are moved, so
+     * a crash meanwhile makes open() write the files again.
+     */
+    private void grow() throws IOException {
+        int[] old_offsets = new int[WIDTHS.length];
+        for (int column = 0; column < WIDTHS.length; column++) {
+            old_offsets[column] = position(column, 0);
+        }
+        buffer.putInt(12, 0);
+        buffer.force();
+        map(new File(file_name), capacity * 2);
+        // a column can overlap its old place, so it is moved through the heap
+        byte[] values = new byte[WIDTHS[TIME] * rows];
+        for (int column = WIDTHS.length - 1; column > 0; column--) {
+            ByteBuffer source = buffer.duplicate();
+            source.position(old_offsets[column]);
+            source.get(values, 0, WIDTHS[column] * rows);
+            ByteBuffer target = buffer.duplicate();
+            target.position(position(column, 0));
+            target.put(values, 0, WIDTHS[column] * rows);
+        }
+        buffer.force();
+        buffer.putInt(12, rows);
+    }
+
+    public synchronized int size() {
+        return rows;
+    }
+
+    /**
+     * Returns the best score of every level, reading the level and score columns.
+     */
+    public synchronized Map<String, Integer> get_best_by_level() {
+        List<String> levels = values.get(LEVEL - PLAYER);
+        int[] best = new int[levels.size()];
+        boolean[] played = new boolean[levels.size()];
+        int level_offset = position(LEVEL, 0);
+        int score_offset = position(SCORE, 0);
+        for (int row = 0; row < rows; row++) {
+            int level = buffer.getInt(level_offset + row * Integer.BYTES);
+            int score = buffer.getInt(score_offset + row * Integer.BYTES);
+            if (!played[level] || score > best[level]) {
+                best[level] = score;
+                played[level] = true;
+            }
+        }
+        Map<String, Integer> best_by_level = new LinkedHashMap<>();
+        for (int level = 0; level < levels.size(); level++) {
+            if (played[level]) {
+                best_by_level.put(levels.get(level), best[level]);
+            }
+        }
+        return best_by_level;
+    }
+
+    /**
+     * Returns the average score of a player, reading the player and score columns, or NaN if
+     * the player did not play.
+     */
+    public synchronized double get_average(String player) {
+        Integer code = codes.get(0).get(player);
+        if (code == null) {
+            return Double.NaN;
+        }
+        int player_offset = position(PLAYER, 0);
+        int score_offset = position(SCORE, 0);
+        long sum = 0;
+        int games = 0;
+        for (int row = 0; row < rows; row++) {
+            if (buffer.getInt(player_offset + row * Integer.BYTES) == code) {
+                sum += buffer.getInt(score_offset + row * Integer.BYTES);
+                games++;
+            }
+        }
+        return (games == 0) ? Double.NaN : (double) sum / games;
+    }
+
+    /**
+     * Returns the entry of a row; the date is written in the format of the game, or empty if it
+     * could not be read when the entry was added.
+     */
+    public synchronized LeaderboardEntry get_entry(int row) {
+        long time = buffer.getLong(position(TIME, row));
+        return new LeaderboardEntry(decode(PLAYER, row), buffer.getInt(position(SCORE, row)),
+            (time == Long.MIN_VALUE) ? "" : date_format.format(time), decode(SPEED, row),
+            decode(LEVEL, row), decode(MODE, row));
+    }
+
+    private String decode(int column, int row) {
+        return values.get(column - PLAYER).get(buffer.getInt(position(column, row)));
+    }
+}
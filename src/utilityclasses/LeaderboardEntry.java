@@ -7,6 +7,11 @@ import java.io.Serializable;
  */
 public class LeaderboardEntry implements Serializable {
 
+    /**
+     * Computed value of the first version, so 'lb.dat' files written by it can still be read.
+     */
+    private static final long serialVersionUID = -4372319393796942452L;
+
     // Stats
     private String player_name;
     private int game_score;
@@ -25,18 +30,30 @@ public class LeaderboardEntry implements Serializable {
         this.level_name = level_name;
     }
 
-    /**
-     * Returns all stats with a placeholder for the ranking.
-     */
-    public String[] getAll() {
-        return new String[]{"Ranking Placeholder", player_name, String.valueOf(game_score), date,
-            speed_setting, level_name, game_mode};
-    }
-
     /**
      * Returns score of the entry.
      */
     public int getScore() {
         return game_score;
     }
+
+    public String getPlayerName() {
+        return player_name;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getSpeedSetting() {
+        return speed_setting;
+    }
+
+    public String getLevelName() {
+        return level_name;
+    }
+
+    public String getGameMode() {
+        return game_mode;
+    }
 }
@@ -0,0 +1,244 @@
+package src.utilityclasses;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * All leaderboard entries in memory with secondary indexes by level, game mode and player.
+ * Entries are only ever added; an entry is known by its id, the order in which it was added.
+ * <p>
+ * For every level, game mode and player (and for all entries) a heap of the TOP_SIZE best
+ * entries is kept up to date on insert, so the first pages of a query with at most one
+ * condition never look at other entries. Other queries rank the entries of their smallest
+ * index and keep the ranking for the next pages; new entries are inserted into the kept
+ * rankings.
+ * <p>
+ * Ranking: higher score first, equal scores in the order they were added.
+ */
+public class LeaderboardIndex {
+
+    public static final int TOP_SIZE = 100;
+    /**
+     * Number of rankings of queries kept.
+     */
+    private static final int RANKINGS = 8;
+
+    /**
+     * Growable array of entry ids.
+     */
+    static class Ids {
+
+        private int[] ids = new int[8];
+        private int size;
+
+        void add(int id) {
+            insert(size, id);
+        }
+
+        void insert(int position, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        int get(int position) {
+            return ids[position];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Heap of the TOP_SIZE best entries, the worst of them on top.
+     */
+    private class Top {
+
+        private final PriorityQueue<Integer> heap = new PriorityQueue<>(TOP_SIZE + 1,
+            (id1, id2) -> compare(id2, id1));
+
+        void offer(int id) {
+            if (heap.size() < TOP_SIZE) {
+                heap.add(id);
+            } else if (compare(id, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(id);
+            }
+        }
+
+        List<Integer> get_ranked() {
+            List<Integer> ranked = new ArrayList<>(heap);
+            ranked.sort(LeaderboardIndex.this::compare);
+            return ranked;
+        }
+    }
+
+    private final List<LeaderboardEntry> entries = new ArrayList<>();
+    private final Map<String, Ids> by_level = new HashMap<>();
+    private final Map<String, Ids> by_mode = new HashMap<>();
+    private final Map<String, Ids> by_player = new HashMap<>();
+    private final Top top = new Top();
+    private final Map<String, Top> top_by_level = new HashMap<>();
+    private final Map<String, Top> top_by_mode = new HashMap<>();
+    private final Map<String, Top> top_by_player = new HashMap<>();
+    /**
+     * Rankings of queries by their conditions (level, game mode, player; null for any).
+     */
+    private final Map<List<String>, Ids> rankings =
+        new LinkedHashMap<List<String>, Ids>(RANKINGS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, Ids> eldest) {
+                return size() > RANKINGS;
+            }
+        };
+
+    public LeaderboardIndex(List<LeaderboardEntry> all_entries) {
+        for (LeaderboardEntry entry : all_entries) {
+            add(entry);
+        }
+    }
+
+    /**
+     * Compares the ranks of two entries, the better one is smaller.
+     */
+    private int compare(int id1, int id2) {
+        int by_score = Integer.compare(entries.get(id2).getScore(), entries.get(id1).getScore());
+        return (by_score != 0) ? by_score : Integer.compare(id1, id2);
+    }
+
+    public synchronized void add(LeaderboardEntry entry) {
+        int id = entries.size();
+        entries.add(entry);
+        by_level.computeIfAbsent(entry.getLevelName(), key -> new Ids()).add(id);
+        by_mode.computeIfAbsent(entry.getGameMode(), key -> new Ids()).add(id);
+        by_player.computeIfAbsent(entry.getPlayerName(), key -> new Ids()).add(id);
+        top.offer(id);
+        top_by_level.computeIfAbsent(entry.getLevelName(), key -> new Top()).offer(id);
+        top_by_mode.computeIfAbsent(entry.getGameMode(), key -> new Top()).offer(id);
+        top_by_player.computeIfAbsent(entry.getPlayerName(), key -> new Top()).offer(id);
+        for (Map.Entry<List<String>, Ids> ranking : rankings.entrySet()) {
+            List<String> conditions = ranking.getKey();
+            if (matches(entry, conditions.get(0), conditions.get(1), conditions.get(2))) {
+                Ids ids = ranking.getValue();
+                // the new entry is ranked after all entries with its score
+                int low = 0;
+                int high = ids.size();
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (entries.get(ids.get(mid)).getScore() >= entry.getScore()) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                ids.insert(low, id);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static boolean matches(LeaderboardEntry entry, String level, String mode,
+        String player) {
+        return (level == null || level.equals(entry.getLevelName()))
+            && (mode == null || mode.equals(entry.getGameMode()))
+            && (player == null || player.equals(entry.getPlayerName()));
+    }
+
+    /**
+     * Returns the ranked entries from offset (up to limit many) which match the conditions, a
+     * condition of null matches any entry.
+     */
+    synchronized List<LeaderboardEntry> find(String level, String mode, String player,
+        int offset, int limit) {
+        int conditions = ((level != null) ? 1 : 0) + ((mode != null) ? 1 : 0)
+            + ((player != null) ? 1 : 0);
+        List<LeaderboardEntry> found = new ArrayList<>();
+        if (conditions <= 1 && (long) offset + limit <= TOP_SIZE) {
+            Top best = (level != null) ? top_by_level.get(level)
+                : (mode != null) ? top_by_mode.get(mode)
+                    : (player != null) ? top_by_player.get(player) : top;
+            if (best == null) {
+                return found;
+            }
+            List<Integer> ranked = best.get_ranked();
+            for (int i = offset; i < ranked.size() && i < offset + limit; i++) {
+                found.add(entries.get(ranked.get(i)));
+            }
+            return found;
+        }
+        Ids ranked = get_ranking(level, mode, player);
+        for (int i = offset; i < ranked.size() && i - offset < limit; i++) {
+            found.add(entries.get(ranked.get(i)));
+        }
+        return found;
+    }
+
+    synchronized int count(String level, String mode, String player) {
+        Ids candidates = get_candidates(level, mode, player);
+        if (candidates == null) {
+            return entries.size();
+        }
+        int conditions = ((level != null) ? 1 : 0) + ((mode != null) ? 1 : 0)
+            + ((player != null) ? 1 : 0);
+        return (conditions == 1) ? candidates.size() : get_ranking(level, mode, player).size();
+    }
+
+    /**
+     * Returns the smallest index list of the conditions, null if there is no condition.
+     */
+    private Ids get_candidates(String level, String mode, String player) {
+        Ids candidates = null;
+        Ids[] lists = {
+            (level == null) ? null : by_level.getOrDefault(level, new Ids()),
+            (mode == null) ? null : by_mode.getOrDefault(mode, new Ids()),
+            (player == null) ? null : by_player.getOrDefault(player, new Ids())};
+        for (Ids list : lists) {
+            if (list != null && (candidates == null || list.size() < candidates.size())) {
+                candidates = list;
+            }
+        }
+        return candidates;
+    }
+
+    private Ids get_ranking(String level, String mode, String player) {
+        List<String> key = Collections.unmodifiableList(Arrays.asList(level, mode, player));
+        Ids ranking = rankings.get(key);
+        if (ranking != null) {
+            return ranking;
+        }
+        Ids candidates = get_candidates(level, mode, player);
+        int num_candidates = (candidates == null) ? entries.size() : candidates.size();
+        // sort keys of negated score (high bits) and id (low bits) instead of boxed ids
+        long[] keys = new long[num_candidates];
+        int size = 0;
+        for (int i = 0; i < num_candidates; i++) {
+            int id = (candidates == null) ? i : candidates.get(i);
+            LeaderboardEntry entry = entries.get(id);
+            if (matches(entry, level, mode, player)) {
+                keys[size++] = ((long) -entry.getScore() << 32) | id;
+            }
+        }
+        Arrays.sort(keys, 0, size);
+        ranking = new Ids();
+        ranking.ids = new int[Math.max(size, 8)];
+        for (int i = 0; i < size; i++) {
+            ranking.ids[i] = (int) keys[i];
+        }
+        ranking.size = size;
+        rankings.put(key, ranking);
+        return ranking;
+    }
+}
@@ -0,0 +1,587 @@
+package src.utilityclasses;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Merges the leaderboards of many machines into one snapshot file (see Leaderboard), ranked by
+ * score, keeping one of every group of identical entries (player, score, date, level, game
+ * mode). Usage: LeaderboardMerge output input..., an input being a leaderboard directory, a
+ * snapshot or journal file or a Java serialized 'lb.dat'.
+ * <p>
+ * The inputs are read in parallel and cut into sorted runs of RUN_SIZE entries in temporary
+ * files, each with a file of the offsets of its records. While there are more runs than one
+ * merge may open, groups of them are merged into longer runs in parallel passes. The last runs
+ * are then merged in parallel: the score range is split at sampled scores into one part per
+ * processor, each part is found in every run by binary search over the offsets and merged with
+ * a heap of the runs. The parts are joined into the output.
+ * <p>
+ * At no point is more than a run per input thread in memory, and the merges running at the same
+ * time open at most MAX_OPEN_RUNS runs together (two files and a read buffer each).
+ */
+public class LeaderboardMerge {
+
+    private static final int RUN_SIZE = 1 << 16;
+    /**
+     * Bytes read at once from a run while merging.
+     */
+    private static final int READ_SIZE = 1 << 15;
+    private static final int SAMPLES_PER_RUN = 64;
+    /**
+     * Runs open at the same time over all parallel merges.
+     */
+    private static final int MAX_OPEN_RUNS = 256;
+
+    /**
+     * Ranking of the merged leaderboard; entries which are the same in the first five keys are
+     * duplicates and next to each other.
+     */
+    private static final Comparator<String> string_comparator = Comparator
+        .nullsFirst(Comparator.naturalOrder());
+    private static final Comparator<LeaderboardEntry> merge_comparator = Comparator
+        .comparingInt((LeaderboardEntry entry) -> -entry.getScore())
+        .thenComparing(LeaderboardEntry::getPlayerName, string_comparator)
+        .thenComparing(LeaderboardEntry::getDate, string_comparator)
+        .thenComparing(LeaderboardEntry::getLevelName, string_comparator)
+        .thenComparing(LeaderboardEntry::getGameMode, string_comparator)
+        .thenComparing(LeaderboardEntry::getSpeedSetting, string_comparator);
+
+    /**
+     * Numbers of a merge.
+     */
+    public static class Report {
+
+        public int inputs;
+        public long read;
+        public long dropped;
+        public long duplicates;
+        public long written;
+        public long nanos;
+
+        @Override
+        public String toString() {
+            return String.format("%d inputs, %d entries read, %d broken, %d duplicates, "
+                    + "%d written in %.1f ms (%.0f entries/s)", inputs, read, dropped, duplicates,
+                written, nanos / 1e6, read / (nanos / 1e9));
+        }
+    }
+
+    /**
+     * A sorted entry and its record.
+     */
+    private static class Sorted {
+
+        private final LeaderboardEntry entry;
+        private final byte[] record;
+
+        private Sorted(LeaderboardEntry entry, byte[] record) {
+            this.entry = entry;
+            this.record = record;
+        }
+    }
+
+    /**
+     * A sorted run: a file of records and a file of the long offset of every record.
+     */
+    private static class Run implements AutoCloseable {
+
+        private final RandomAccessFile records;
+        private final RandomAccessFile offsets;
+        private final long count;
+
+        private Run(Path path) throws IOException {
+            records = new RandomAccessFile(path.toFile(), "r");
+            offsets = new RandomAccessFile(offsets_of(path).toFile(), "r");
+            count = offsets.length() / Long.BYTES;
+        }
+
+        /**
+         * Offset of a record, the length of the file for the index count.
+         */
+        private long get_offset(long index) throws IOException {
+            if (index == count) {
+                return records.length();
+            }
+            offsets.seek(index * Long.BYTES);
+            return offsets.readLong();
+        }
+
+        private int get_score(long index) throws IOException {
+            records.seek(get_offset(index) + LeaderboardCodec.SCORE);
+            return records.readInt();
+        }
+
+        @Override
+        public void close() throws IOException {
+            records.close();
+            offsets.close();
+        }
+    }
+
+    /**
+     * Records of a run from one offset up to (not including) another.
+     */
+    private static class Cursor {
+
+        private final DataInputStream input_stream;
+        private long remaining;
+        private Sorted current;
+
+        /**
+         * Reads the run from its file position on, so the run is not searched after this.
+         */
+        private Cursor(Run run, long from, long end) throws IOException {
+            run.records.seek(from);
+            this.input_stream = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(run.records.getChannel()), READ_SIZE));
+            this.remaining = end - from;
+        }
+
+        /**
+         * Moves to the next record, returns false at the end of the range.
+         */
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            byte[] record = LeaderboardCodec.read_record(input_stream);
+            if (record == null) {
+                throw new EOFException("run ends early");
+            }
+            remaining -= record.length;
+            current = new Sorted(LeaderboardCodec.decode(record, 0), record);
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: LeaderboardMerge output input...");
+            return;
+        }
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            inputs.add(Paths.get(args[i]));
+        }
+        merge(inputs, Paths.get(args[0]));
+    }
+
+    /**
+     * Merges the leaderboards of the inputs into a snapshot file.
+     */
+    public static Report merge(List<Path> inputs, Path output) throws IOException {
+        long start = System.nanoTime();
+        Report report = new Report();
+        report.inputs = inputs.size();
+        Path parent = output.toAbsolutePath().getParent();
+        Path directory = Files.createTempDirectory(parent, "lb-merge");
+        AtomicLong read = new AtomicLong();
+        AtomicLong dropped = new AtomicLong();
+        AtomicLong duplicates = new AtomicLong();
+        try {
+            List<Path> written_runs;
+            int fan_in = Math.max(2,
+                MAX_OPEN_RUNS / Runtime.getRuntime().availableProcessors());
+            try {
+                written_runs = inputs.parallelStream()
+                    .flatMap(input -> write_runs(input, directory, read, dropped).stream())
+                    .collect(Collectors.toList());
+                while (written_runs.size() > fan_in) {
+                    written_runs = merge_pass(written_runs, fan_in, directory, duplicates);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            List<Path> runs = written_runs;
+            List<Integer> bounds = split(runs);
+            long[][] counts;
+            try {
+                counts = IntStream.range(0, bounds.size() + 1).parallel()
+                    .mapToObj(part -> merge_part(runs, bounds, part, directory))
+                    .toArray(long[][]::new);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            Path merged = directory.resolve("merged");
+            try (FileOutputStream file_stream = new FileOutputStream(merged.toFile())) {
+                DataOutputStream header = new DataOutputStream(file_stream);
+                LeaderboardCodec.write_file_header(header, 0);
+                header.flush();
+                FileChannel target = file_stream.getChannel();
+                for (int part = 0; part <= bounds.size(); part++) {
+                    try (FileChannel source = FileChannel.open(directory.resolve("part" + part))) {
+                        long position = 0;
+                        while (position < source.size()) {
+                            position += source.transferTo(position, source.size() - position,
+                                target);
+                        }
+                    }
+                    report.written += counts[part][0];
+                    report.duplicates += counts[part][1];
+                }
+                file_stream.getFD().sync();
+            }
+            Files.move(merged, output, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            AtomicFile.sync_directory(output);
+        } finally {
+            File[] temporary = directory.toFile().listFiles();
+            if (temporary != null) {
+                for (File file : temporary) {
+                    file.delete();
+                }
+            }
+            directory.toFile().delete();
+        }
+        report.read = read.get();
+        report.dropped = dropped.get();
+        report.duplicates += duplicates.get();
+        report.nanos = System.nanoTime() - start;
+        System.out.println("[Merge] " + report);
+        return report;
+    }
+
+    /**
+     * Reads an input and writes its entries as sorted runs, returns the run files.
+     */
+    private static List<Path> write_runs(Path input, Path directory, AtomicLong read,
+        AtomicLong dropped) {
+        List<Path> runs = new ArrayList<>();
+        List<Sorted> run = new ArrayList<>();
+        try {
+            for (Path file : get_files(input)) {
+                for_each_entry(file, dropped, entry -> {
+                    read.incrementAndGet();
+                    byte[] record;
+                    try {
+                        record = LeaderboardCodec.encode(entry);
+                    } catch (IllegalArgumentException e) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    run.add(new Sorted(entry, record));
+                    if (run.size() == RUN_SIZE) {
+                        runs.add(write_run(run, directory));
+                    }
+                });
+            }
+            if (!run.isEmpty()) {
+                runs.add(write_run(run, directory));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return runs;
+    }
+
+    private interface EntryConsumer {
+
+        void accept(LeaderboardEntry entry) throws IOException;
+    }
+
+    /**
+     * Returns the leaderboard files of an input: the file itself, or the snapshot and the
+     * journals which are not in it yet (or else 'lb.dat') of a directory.
+     */
+    private static List<Path> get_files(Path input) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(input)) {
+            files.add(input);
+            return files;
+        }
+        Path snapshot = input.resolve("lb.snapshot");
+        long snapshot_generation = 0;
+        if (Files.exists(snapshot)) {
+            files.add(snapshot);
+            try (DataInputStream input_stream = new DataInputStream(
+                new FileInputStream(snapshot.toFile()))) {
+                snapshot_generation = LeaderboardCodec.read_file_header(input_stream);
+            }
+        }
+        try (java.util.stream.Stream<Path> list = Files.list(input)) {
+            for (Path journal : list.sorted().collect(Collectors.toList())) {
+                String name = journal.getFileName().toString();
+                if (name.matches("lb\\.\\d+\\.journal")
+                    && Long.parseLong(name.split("\\.")[1]) > snapshot_generation) {
+                    files.add(journal);
+                }
+            }
+        }
+        if (files.isEmpty() && Files.exists(input.resolve("lb.dat"))) {
+            files.add(input.resolve("lb.dat"));
+        }
+        return files;
+    }
+
+    /**
+     * Streams the entries of a snapshot or journal, or reads the list of a Java serialized file.
+     */
+    private static void for_each_entry(Path file, AtomicLong dropped, EntryConsumer consumer)
+        throws IOException {
+        try (DataInputStream input_stream = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            input_stream.mark(Integer.BYTES);
+            if (input_stream.readInt() == LeaderboardCodec.MAGIC) {
+                input_stream.reset();
+                LeaderboardCodec.read_file_header(input_stream);
+                while (true) {
+                    byte[] record;
+                    try {
+                        record = LeaderboardCodec.read_record(input_stream);
+                    } catch (EOFException e) {
+                        // written in part
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    if (record == null) {
+                        return;
+                    }
+                    LeaderboardEntry entry;
+                    try {
+                        entry = LeaderboardCodec.decode(record, 0);
+                    } catch (IOException e) {
+                        // checksum does not match
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+                    consumer.accept(entry);
+                }
+            }
+        }
+        Object entries;
+        try (ObjectInputStream input_stream = new ObjectInputStream(
+            new FileInputStream(file.toFile()))) {
+            entries = input_stream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        if (!(entries instanceof List)) {
+            throw new IOException(file + " is not a leaderboard");
+        }
+        for (Object entry : (List<?>) entries) {
+            if (!(entry instanceof LeaderboardEntry)) {
+                throw new IOException(file + " is not a leaderboard");
+            }
+            consumer.accept((LeaderboardEntry) entry);
+        }
+    }
+
+    private static Path write_run(List<Sorted> run, Path directory) throws IOException {
+        run.sort((sorted1, sorted2) -> merge_comparator.compare(sorted1.entry, sorted2.entry));
+        Path path = Files.createTempFile(directory, "run", "");
+        try (DataOutputStream output_stream = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(path.toFile())));
+            DataOutputStream offsets_stream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(offsets_of(path).toFile())))) {
+            long offset = 0;
+            for (Sorted sorted : run) {
+                offsets_stream.writeLong(offset);
+                output_stream.write(sorted.record);
+                offset += sorted.record.length;
+            }
+        }
+        run.clear();
+        return path;
+    }
+
+    private static Path offsets_of(Path run) {
+        return run.resolveSibling(run.getFileName() + ".offsets");
+    }
+
+    /**
+     * Samples scores of the runs and returns the lowest score of each part but the last, in
+     * descending order.
+     */
+    private static List<Integer> split(List<Path> runs) throws IOException {
+        int parts = Runtime.getRuntime().availableProcessors();
+        List<Integer> samples = new ArrayList<>();
+        for (Path run : runs) {
+            try (Run opened = new Run(run)) {
+                for (int i = 0; i < SAMPLES_PER_RUN && opened.count > 0; i++) {
+                    samples.add(opened.get_score(opened.count * i / SAMPLES_PER_RUN));
+                }
+            }
+        }
+        samples.sort(Comparator.reverseOrder());
+        List<Integer> bounds = new ArrayList<>();
+        for (int part = 1; part < parts && !samples.isEmpty(); part++) {
+            int bound = samples.get(samples.size() * part / parts);
+            if (bounds.isEmpty() || bound < bounds.get(bounds.size() - 1)) {
+                bounds.add(bound);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Offset of the first record of a run with a score below a bound.
+     */
+    private static long find(Run run, int bound) throws IOException {
+        long low = 0;
+        long high = run.count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (run.get_score(mid) >= bound) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return run.get_offset(low);
+    }
+
+    /**
+     * Merges the entries of a part (scores below the bound of the part before, at least the
+     * bound of the part) of all runs into a file. Returns the numbers of written entries and of
+     * duplicates.
+     */
+    private static long[] merge_part(List<Path> runs, List<Integer> bounds, int part,
+        Path directory) {
+        List<Run> opened = new ArrayList<>();
+        try (DataOutputStream output_stream = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(directory.resolve("part" + part).toFile())))) {
+            List<Cursor> cursors = new ArrayList<>();
+            for (Path path : runs) {
+                Run run = new Run(path);
+                opened.add(run);
+                long from = (part == 0) ? 0 : find(run, bounds.get(part - 1));
+                long end = (part == bounds.size()) ? run.get_offset(run.count)
+                    : find(run, bounds.get(part));
+                cursors.add(new Cursor(run, from, end));
+            }
+            return merge_cursors(cursors, output_stream, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            close_all(opened);
+        }
+    }
+
+    /**
+     * Merges groups of fan_in runs into one run each, in parallel, and deletes the merged runs.
+     * Returns the new runs.
+     */
+    private static List<Path> merge_pass(List<Path> runs, int fan_in, Path directory,
+        AtomicLong duplicates) {
+        List<List<Path>> groups = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i += fan_in) {
+            groups.add(runs.subList(i, Math.min(runs.size(), i + fan_in)));
+        }
+        return groups.parallelStream()
+            .map(group -> (group.size() == 1) ? group.get(0)
+                : merge_runs(group, directory, duplicates))
+            .collect(Collectors.toList());
+    }
+
+    private static Path merge_runs(List<Path> runs, Path directory, AtomicLong duplicates) {
+        List<Run> opened = new ArrayList<>();
+        Path path;
+        try {
+            path = Files.createTempFile(directory, "run", "");
+            try (DataOutputStream output_stream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path.toFile())));
+                DataOutputStream offsets_stream = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(offsets_of(path).toFile())))) {
+                List<Cursor> cursors = new ArrayList<>();
+                for (Path run_path : runs) {
+                    Run run = new Run(run_path);
+                    opened.add(run);
+                    cursors.add(new Cursor(run, 0, run.get_offset(run.count)));
+                }
+                duplicates.addAndGet(merge_cursors(cursors, output_stream, offsets_stream)[1]);
+            } finally {
+                close_all(opened);
+            }
+            for (Path run_path : runs) {
+                Files.delete(run_path);
+                Files.delete(offsets_of(run_path));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return path;
+    }
+
+    /**
+     * Merges the records of the cursors with a heap, leaving out duplicates, and writes the
+     * offset of every written record if there is an offsets_stream. Returns the numbers of
+     * written entries and of duplicates.
+     */
+    private static long[] merge_cursors(List<Cursor> cursors, DataOutputStream output_stream,
+        DataOutputStream offsets_stream) throws IOException {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, cursors.size()),
+            (cursor1, cursor2) -> merge_comparator
+                .compare(cursor1.current.entry, cursor2.current.entry));
+        for (Cursor cursor : cursors) {
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        long written = 0;
+        long duplicates = 0;
+        long offset = 0;
+        LeaderboardEntry last = null;
+        while (!heap.isEmpty()) {
+            Cursor cursor = heap.poll();
+            LeaderboardEntry entry = cursor.current.entry;
+            if (last != null && is_duplicate(last, entry)) {
+                duplicates++;
+            } else {
+                if (offsets_stream != null) {
+                    offsets_stream.writeLong(offset);
+                }
+                output_stream.write(cursor.current.record);
+                offset += cursor.current.record.length;
+                written++;
+                last = entry;
+            }
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return new long[]{written, duplicates};
+    }
+
+    private static void close_all(List<Run> runs) {
+        for (Run run : runs) {
+            try {
+                run.close();
+            } catch (IOException e) {
+                System.out.println("[Merge] IO Error: " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean is_duplicate(LeaderboardEntry entry1, LeaderboardEntry entry2) {
+        return entry1.getScore() == entry2.getScore()
+            && Objects.equals(entry1.getPlayerName(), entry2.getPlayerName())
+            && Objects.equals(entry1.getDate(), entry2.getDate())
+            && Objects.equals(entry1.getLevelName(), entry2.getLevelName())
+            && Objects.equals(entry1.getGameMode(), entry2.getGameMode());
+    }
+}
@@ -0,0 +1,60 @@
+package src.utilityclasses;
+
+import java.util.List;
+
+/**
+ * Query for leaderboard entries by level, game mode and player, ranked by score, e.g.
+ * <pre>
+ * leaderboard.query().level("Walled").mode("Gun").page(0, 20).get_entries()
+ * </pre>
+ * The first pages of queries with at most one condition come from the top heaps of the
+ * LeaderboardIndex, everything else from its rankings.
+ */
+public class LeaderboardQuery {
+
+    private final LeaderboardIndex index;
+    private String level;
+    private String mode;
+    private String player;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+
+    LeaderboardQuery(LeaderboardIndex index) {
+        this.index = index;
+    }
+
+    public LeaderboardQuery level(String level) {
+        this.level = level;
+        return this;
+    }
+
+    public LeaderboardQuery mode(String mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public LeaderboardQuery player(String player) {
+        this.player = player;
+        return this;
+    }
+
+    /**
+     * Limits the result to the entries ranked offset (from 0) to offset + limit - 1.
+     */
+    public LeaderboardQuery page(int offset, int limit) {
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    public List<LeaderboardEntry> get_entries() {
+        return index.find(level, mode, player, offset, limit);
+    }
+
+    /**
+     * Number of matching entries, not limited by the page.
+     */
+    public int count() {
+        return index.count(level, mode, player);
+    }
+}
@@ -0,0 +1,205 @@
+package src.utilityclasses;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistics of the leaderboard per player and per level, updated with every added entry so
+ * they are never computed from the whole history: number of games, mean and best score, the
+ * median and 95th percentile from a QuantileSketch and the games of the last DAYS days.
+ */
+public class LeaderboardStats {
+
+    public static final int DAYS = 30;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+        .ofPattern("dd/MM/yyyy HH:mm");
+
+    /**
+     * Quantiles of scores with a relative error of at most ALPHA. Scores are counted in buckets
+     * whose bounds grow by the factor GAMMA, so a few hundred counters cover any score.
+     */
+    static class QuantileSketch {
+
+        private static final double ALPHA = 0.02;
+        private static final double GAMMA = (1 + ALPHA) / (1 - ALPHA);
+        private static final double LOG_GAMMA = Math.log(GAMMA);
+
+        private int zeros;
+        private int[] counts = new int[0];
+        private int count;
+
+        void add(int score) {
+            count++;
+            if (score <= 0) {
+                zeros++;
+                return;
+            }
+            int bucket = (int) Math.ceil(Math.log(score) / LOG_GAMMA);
+            if (bucket >= counts.length) {
+                counts = Arrays.copyOf(counts, bucket + 1);
+            }
+            counts[bucket]++;
+        }
+
+        int get_quantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) (quantile * (count - 1));
+            if (rank < zeros) {
+                return 0;
+            }
+            rank -= zeros;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                if (rank < counts[bucket]) {
+                    return (int) Math.round(2 * Math.pow(GAMMA, bucket) / (GAMMA + 1));
+                }
+                rank -= counts[bucket];
+            }
+            return (int) Math.round(Math.pow(GAMMA, counts.length - 1));
+        }
+    }
+
+    /**
+     * Games per day of the last DAYS days in a ring of counters.
+     */
+    static class DailyActivity {
+
+        private final long[] days = new long[DAYS];
+        private final int[] counts = new int[DAYS];
+
+        DailyActivity() {
+            Arrays.fill(days, Long.MIN_VALUE);
+        }
+
+        void add(long day) {
+            int slot = (int) Math.floorMod(day, (long) DAYS);
+            if (days[slot] == day) {
+                counts[slot]++;
+            } else if (days[slot] < day) {
+                days[slot] = day;
+                counts[slot] = 1;
+            }
+        }
+
+        /**
+         * Games of the DAYS days up to today, the oldest first.
+         */
+        int[] get(long today) {
+            int[] games = new int[DAYS];
+            for (int i = 0; i < DAYS; i++) {
+                long day = today - (DAYS - 1 - i);
+                int slot = (int) Math.floorMod(day, (long) DAYS);
+                games[i] = (days[slot] == day) ? counts[slot] : 0;
+            }
+            return games;
+        }
+    }
+
+    private static class Stats {
+
+        private int count;
+        private long sum;
+        private int best = Integer.MIN_VALUE;
+        private final QuantileSketch sketch = new QuantileSketch();
+        private final DailyActivity activity = new DailyActivity();
+
+        void add(int score, long day) {
+            count++;
+            sum += score;
+            best = Math.max(best, score);
+            sketch.add(score);
+            if (day != Long.MIN_VALUE) {
+                activity.add(day);
+            }
+        }
+    }
+
+    /**
+     * Statistics of a player or level at the time they were asked for.
+     */
+    public static class Summary {
+
+        public final String name;
+        public final int games;
+        public final double mean;
+        public final int best;
+        public final int median;
+        public final int p95;
+        /**
+         * Games of the last DAYS days, the oldest first.
+         */
+        public final int[] daily;
+
+        private Summary(String name, Stats stats, long today) {
+            this.name = name;
+            this.games = stats.count;
+            this.mean = (double) stats.sum / stats.count;
+            this.best = stats.best;
+            this.median = stats.sketch.get_quantile(0.5);
+            this.p95 = stats.sketch.get_quantile(0.95);
+            this.daily = stats.activity.get(today);
+        }
+
+        public int get_recent_games() {
+            return Arrays.stream(daily).sum();
+        }
+    }
+
+    private final Map<String, Stats> by_player = new TreeMap<>();
+    private final Map<String, Stats> by_level = new TreeMap<>();
+    private final Stats all = new Stats();
+
+    public LeaderboardStats(List<LeaderboardEntry> entries) {
+        for (LeaderboardEntry entry : entries) {
+            add(entry);
+        }
+    }
+
+    public synchronized void add(LeaderboardEntry entry) {
+        long day = parse_day(entry.getDate());
+        by_player.computeIfAbsent(String.valueOf(entry.getPlayerName()), key -> new Stats())
+            .add(entry.getScore(), day);
+        by_level.computeIfAbsent(String.valueOf(entry.getLevelName()), key -> new Stats())
+            .add(entry.getScore(), day);
+        all.add(entry.getScore(), day);
+    }
+
+    private static long parse_day(String date) {
+        try {
+            return LocalDate.parse(date, DATE_FORMAT).toEpochDay();
+        } catch (DateTimeParseException | NullPointerException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    public synchronized List<Summary> get_players() {
+        return summarize(by_player);
+    }
+
+    public synchronized List<Summary> get_levels() {
+        return summarize(by_level);
+    }
+
+    /**
+     * Statistics of all games.
+     */
+    public synchronized Summary get_all() {
+        return new Summary("All", all, LocalDate.now().toEpochDay());
+    }
+
+    private static List<Summary> summarize(Map<String, Stats> stats) {
+        long today = LocalDate.now().toEpochDay();
+        List<Summary> summaries = new ArrayList<>(stats.size());
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            summaries.add(new Summary(entry.getKey(), entry.getValue(), today));
+        }
+        return summaries;
+    }
+}
@@ -0,0 +1,490 @@
+package src.utilityclasses;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import src.gameclasses.Level;
+
+/**
+ * Binary format of levels which replaces the Java serialization of 'levels.dat'.
+ * <p>
+ * File: int MAGIC, short VERSION, then records up to the end of the file. The file is only ever
+ * appended to; the last record of a level decides whether and how it exists.
+ * <p>
+ * Record: byte type, int length of the payload, payload, int CRC32 of type and payload. The
+ * payload of RECORD_PUT is a level, the payload of RECORD_DELETE the UTF identifier of a level.
+ * <p>
+ * Boards are stored by content: RECORD_BOARD holds long board hash, short width, short height
+ * and the cells of a board without the snake, RECORD_PUT_REF holds a level like RECORD_PUT but
+ * instead of the cells a byte telling which of head and tail are snake cells (bit 0 head, bit 1
+ * tail) and the long hash of its board, written earlier in the file. Levels which only differ in
+ * the start of the snake, e.g. every "Walled" level of a size, share one board.
+ * <p>
+ * Version 1 files had an int number of levels after the VERSION followed by the levels.
+ * <p>
+ * Level: UTF identifier, boolean has name, UTF name (if it has one), short width, short height,
+ * short head x, short head y, short tail x, short tail y, byte direction, boolean modifiable,
+ * int length of the cells followed by the cells. The cells are run length encoded in rows from
+ * the top left as pairs of the cell value (byte) and the run length (varint, 7 bits per byte,
+ * lowest first).
+ */
+public class LevelCodec {
+
+    public static final int MAGIC = 0x534E4B4C;
+    public static final short VERSION = 2;
+    public static final short VERSION_WITHOUT_RECORDS = 1;
+    public static final int FILE_HEADER_SIZE = 6;
+    public static final byte RECORD_PUT = 1;
+    public static final byte RECORD_DELETE = 2;
+    public static final byte RECORD_BOARD = 3;
+    public static final byte RECORD_PUT_REF = 4;
+    /**
+     * Bytes of a record besides its payload.
+     */
+    public static final int RECORD_OVERHEAD = 9;
+
+    /**
+     * Level read from a file with the identifier it is stored under.
+     */
+    public static class Entry {
+
+        public final String identifier;
+        public final Level level;
+
+        public Entry(String identifier, Level level) {
+            this.identifier = identifier;
+            this.level = level;
+        }
+    }
+
+    /**
+     * Everything stored about a level except its cells, which can be read later from
+     * cells_offset in the file.
+     */
+    public static class Header {
+
+        public String identifier;
+        public String name;
+        public int width;
+        public int height;
+        public int head_x;
+        public int head_y;
+        public int tail_x;
+        public int tail_y;
+        public int direction;
+        public boolean modifiable;
+        public long cells_offset;
+        public int cells_length;
+        /**
+         * Position and size of the record of the level in the file.
+         */
+        public long record_offset;
+        public int record_length;
+        /**
+         * Hash of the shared board holding the cells, 0 if the cells are part of the record.
+         */
+        public long board_hash;
+        /**
+         * Which of head (bit 0) and tail (bit 1) are snake cells missing in the shared board.
+         */
+        public int snake_mask;
+
+        public static Header of(String identifier, Level level) {
+            Header header = new Header();
+            header.identifier = identifier;
+            header.name = level.name;
+            header.width = level.get_width();
+            header.height = level.get_height();
+            header.head_x = level.head[0];
+            header.head_y = level.head[1];
+            header.tail_x = level.tail[0];
+            header.tail_y = level.tail[1];
+            header.direction = level.direction;
+            header.modifiable = level.modifiable;
+            return header;
+        }
+
+        public Level to_level(Integer[][] game_board) {
+            return new Level(game_board, new Integer[]{head_x, head_y},
+                new Integer[]{tail_x, tail_y}, modifiable, direction, name);
+        }
+
+        /**
+         * Puts the snake cells of the mask back into a board.
+         */
+        public void add_snake(Integer[][] game_board) {
+            if ((snake_mask & 1) != 0) {
+                game_board[head_y][head_x] = 1;
+            }
+            if ((snake_mask & 2) != 0) {
+                game_board[tail_y][tail_x] = 1;
+            }
+        }
+    }
+
+    /**
+     * Board stored once for all levels sharing it.
+     */
+    public static class Board {
+
+        public long hash;
+        public int width;
+        public int height;
+        public long record_offset;
+        public int record_length;
+        public long cells_offset;
+        public int cells_length;
+        /**
+         * Number of live levels using the board.
+         */
+        public int references;
+    }
+
+    public static void write_file_header(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+    }
+
+    /**
+     * Reads the file header and returns the version of the file.
+     */
+    public static short read_file_header(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a level file");
+        }
+        short version = in.readShort();
+        if (version != VERSION && version != VERSION_WITHOUT_RECORDS) {
+            throw new IOException("unknown level file version " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Record of a level file.
+     */
+    public static class Record {
+
+        public final byte type;
+        public final byte[] payload;
+
+        public Record(byte type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public int length() {
+            return RECORD_OVERHEAD + payload.length;
+        }
+    }
+
+    /**
+     * Returns the RECORD_PUT of a level whose cells are already encoded.
+     */
+    public static byte[] put_record(Header header, byte[] cells) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        write_level(new DataOutputStream(payload), header, cells);
+        return record(RECORD_PUT, payload.toByteArray());
+    }
+
+    /**
+     * Returns the RECORD_PUT_REF of a level whose board is stored in a RECORD_BOARD.
+     */
+    public static byte[] put_ref_record(Header header) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        write_header_fields(out, header);
+        out.writeByte(header.snake_mask);
+        out.writeLong(header.board_hash);
+        return record(RECORD_PUT_REF, payload.toByteArray());
+    }
+
+    /**
+     * Returns the RECORD_BOARD of encoded cells.
+     */
+    public static byte[] board_record(long hash, int width, int height, byte[] cells)
+        throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeLong(hash);
+        out.writeShort(width);
+        out.writeShort(height);
+        out.write(cells);
+        return record(RECORD_BOARD, payload.toByteArray());
+    }
+
+    /**
+     * Reads the payload of a RECORD_BOARD up to its cells, which are the rest of the payload.
+     */
+    public static Board read_board(DataInput in, int payload_length) throws IOException {
+        Board board = new Board();
+        board.hash = in.readLong();
+        board.width = in.readShort();
+        board.height = in.readShort();
+        board.cells_length = payload_length - Long.BYTES - 2 * Short.BYTES;
+        return board;
+    }
+
+    /**
+     * Reads the payload of a RECORD_PUT_REF.
+     */
+    public static Header read_ref_header(DataInput in) throws IOException {
+        Header header = read_header_fields(in);
+        header.snake_mask = in.readByte();
+        header.board_hash = in.readLong();
+        return header;
+    }
+
+    /**
+     * Content hash of a board: the first 8 bytes of the SHA-256 of size and encoded cells. Never
+     * 0, which marks levels with their own cells.
+     */
+    public static long board_hash(int width, int height, byte[] cells) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(new byte[]{(byte) (width >> 8), (byte) width, (byte) (height >> 8),
+                (byte) height});
+            long hash = ByteBuffer.wrap(digest.digest(cells)).getLong();
+            return (hash == 0) ? 1 : hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a copy of the board without the snake cells at head and tail and sets the
+     * snake_mask of the header accordingly.
+     */
+    public static Integer[][] remove_snake(Header header, Integer[][] game_board) {
+        Integer[][] board = new Integer[game_board.length][];
+        for (int y = 0; y < board.length; y++) {
+            board[y] = game_board[y].clone();
+        }
+        header.snake_mask = 0;
+        if (board[header.head_y][header.head_x] == 1) {
+            board[header.head_y][header.head_x] = 0;
+            header.snake_mask |= 1;
+        }
+        if (board[header.tail_y][header.tail_x] == 1) {
+            board[header.tail_y][header.tail_x] = 0;
+            header.snake_mask |= 2;
+        }
+        return board;
+    }
+
+    public static byte[] delete_record(String identifier) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        new DataOutputStream(payload).writeUTF(identifier);
+        return record(RECORD_DELETE, payload.toByteArray());
+    }
+
+    private static byte[] record(byte type, byte[] payload) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(RECORD_OVERHEAD + payload.length);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(checksum(type, payload));
+        return record.toByteArray();
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Thrown by read_record for a record which was read whole but whose checksum is wrong. The
+     * input is at the next record.
+     */
+    public static class ChecksumException extends IOException {
+
+        /**
+         * Length of the record, so its position in the file can be skipped.
+         */
+        public final int length;
+
+        public ChecksumException(int length) {
+            super("wrong checksum");
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads a record of at most max_length bytes, e.g. the rest of a file. Throws an
+     * EOFException if the record is incomplete or longer, e.g. because the program stopped while
+     * it was written, a ChecksumException if its checksum is wrong and an IOException if its type
+     * or length cannot be read, in which case the input is out of step.
+     */
+    public static Record read_record(DataInput in, long max_length) throws IOException {
+        byte type = in.readByte();
+        int length = in.readInt();
+        if (type < RECORD_PUT || type > RECORD_PUT_REF || length < 0) {
+            throw new IOException("broken record");
+        }
+        if (length > max_length - RECORD_OVERHEAD) {
+            throw new EOFException("record longer than " + max_length + " bytes");
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        if (in.readInt() != checksum(type, payload)) {
+            throw new ChecksumException(RECORD_OVERHEAD + length);
+        }
+        return new Record(type, payload);
+    }
+
+    public static void write_level(DataOutput out, String identifier, Level level)
+        throws IOException {
+        byte[] cells = encode_cells(level.game_board);
+        write_level(out, Header.of(identifier, level), cells);
+    }
+
+    /**
+     * Writes a level whose cells are already encoded.
+     */
+    public static void write_level(DataOutput out, Header header, byte[] cells)
+        throws IOException {
+        write_header_fields(out, header);
+        out.writeInt(cells.length);
+        out.write(cells);
+    }
+
+    private static void write_header_fields(DataOutput out, Header header) throws IOException {
+        out.writeUTF(header.identifier);
+        out.writeBoolean(header.name != null);
+        if (header.name != null) {
+            out.writeUTF(header.name);
+        }
+        out.writeShort(header.width);
+        out.writeShort(header.height);
+        out.writeShort(header.head_x);
+        out.writeShort(header.head_y);
+        out.writeShort(header.tail_x);
+        out.writeShort(header.tail_y);
+        out.writeByte(header.direction);
+        out.writeBoolean(header.modifiable);
+    }
+
+    /**
+     * Reads a level up to its cells, which are left in the input.
+     */
+    public static Header read_header(DataInput in) throws IOException {
+        Header header = read_header_fields(in);
+        header.cells_length = in.readInt();
+        return header;
+    }
+
+    private static Header read_header_fields(DataInput in) throws IOException {
+        Header header = new Header();
+        header.identifier = in.readUTF();
+        header.name = in.readBoolean() ? in.readUTF() : null;
+        header.width = in.readShort();
+        header.height = in.readShort();
+        header.head_x = in.readShort();
+        header.head_y = in.readShort();
+        header.tail_x = in.readShort();
+        header.tail_y = in.readShort();
+        header.direction = in.readByte();
+        header.modifiable = in.readBoolean();
+        return header;
+    }
+
+    public static Entry read_level(DataInput in) throws IOException {
+        Header header = read_header(in);
+        byte[] cells = new byte[header.cells_length];
+        in.readFully(cells);
+        return new Entry(header.identifier,
+            header.to_level(decode_cells(cells, header.width, header.height)));
+    }
+
+    /**
+     * Run length encodes the cells in rows from the top left.
+     */
+    public static byte[] encode_cells(Integer[][] game_board) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int value = -1;
+        int run = 0;
+        for (Integer[] row : game_board) {
+            for (Integer cell : row) {
+                if (cell != value) {
+                    write_run(out, value, run);
+                    value = cell;
+                    run = 0;
+                }
+                run++;
+            }
+        }
+        write_run(out, value, run);
+        return out.toByteArray();
+    }
+
+    private static void write_run(ByteArrayOutputStream out, int value, int run) {
+        if (run == 0) {
+            return;
+        }
+        out.write(value);
+        while (run >= 0x80) {
+            out.write((run & 0x7F) | 0x80);
+            run >>>= 7;
+        }
+        out.write(run);
+    }
+
+    public static Integer[][] decode_cells(byte[] cells, int width, int height)
+        throws IOException {
+        Integer[][] game_board = new Integer[height][width];
+        int spot = 0;
+        int pos = 0;
+        while (pos < cells.length) {
+            Integer value = (int) cells[pos++];
+            int run = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (pos == cells.length) {
+                    throw new IOException("truncated cells");
+                }
+                b = cells[pos++];
+                run |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (spot + run > width * height) {
+                throw new IOException("too many cells");
+            }
+            for (int i = 0; i < run; i++, spot++) {
+                game_board[spot / width][spot % width] = value;
+            }
+        }
+        if (spot != width * height) {
+            throw new IOException("missing cells");
+        }
+        return game_board;
+    }
+
+    /**
+     * Makes equal rows of a board the same array, so a board which is only read (e.g. in a
+     * cache) holds every distinct row once.
+     */
+    public static Integer[][] share_rows(Integer[][] game_board) {
+        Map<List<Integer>, Integer[]> rows = new HashMap<>();
+        for (int y = 0; y < game_board.length; y++) {
+            Integer[] row = rows.putIfAbsent(Arrays.asList(game_board[y]), game_board[y]);
+            if (row != null) {
+                game_board[y] = row;
+            }
+        }
+        return game_board;
+    }
+}
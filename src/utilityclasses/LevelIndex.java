@@ -0,0 +1,80 @@
+package src.utilityclasses;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Headers of all levels of the level data file with secondary indexes by size, name and the
+ * modifiable flag. An index is never changed after it was built; LevelSerializer replaces it when
+ * the file changes, so it can be read by any number of threads without locking.
+ */
+public class LevelIndex {
+
+    public static final LevelIndex EMPTY = new LevelIndex(Collections.emptyList());
+
+    /**
+     * Map of level name to header, in the order of the file.
+     */
+    private final Map<String, LevelCodec.Header> headers = new LinkedHashMap<>();
+    private final Map<Long, List<LevelCodec.Header>> by_size = new HashMap<>();
+    private final NavigableMap<String, LevelCodec.Header> by_name = new TreeMap<>();
+    private final List<LevelCodec.Header> modifiable = new ArrayList<>();
+    private final List<LevelCodec.Header> not_modifiable = new ArrayList<>();
+
+    public LevelIndex(List<LevelCodec.Header> all_headers) {
+        for (LevelCodec.Header header : all_headers) {
+            headers.put(header.identifier, header);
+        }
+        for (LevelCodec.Header header : headers.values()) {
+            by_size.computeIfAbsent(size_key(header.width, header.height),
+                key -> new ArrayList<>()).add(header);
+            by_name.put(header.identifier, header);
+            (header.modifiable ? modifiable : not_modifiable).add(header);
+        }
+    }
+
+    private static long size_key(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    public LevelCodec.Header get(String identifier) {
+        return headers.get(identifier);
+    }
+
+    public int size() {
+        return headers.size();
+    }
+
+    /**
+     * All headers in the order of the file.
+     */
+    public List<LevelCodec.Header> get_all() {
+        return Collections.unmodifiableList(new ArrayList<>(headers.values()));
+    }
+
+    public List<LevelCodec.Header> get_by_size(int width, int height) {
+        return Collections.unmodifiableList(
+            by_size.getOrDefault(size_key(width, height), Collections.emptyList()));
+    }
+
+    /**
+     * Headers of the levels whose name starts with the prefix, sorted by name.
+     */
+    public List<LevelCodec.Header> get_by_prefix(String prefix) {
+        if (prefix.isEmpty()) {
+            return new ArrayList<>(by_name.values());
+        }
+        return new ArrayList<>(by_name.subMap(prefix, true, prefix + Character.MAX_VALUE, true)
+            .values());
+    }
+
+    public List<LevelCodec.Header> get_by_modifiable(boolean is_modifiable) {
+        return Collections.unmodifiableList(is_modifiable ? modifiable : not_modifiable);
+    }
+}
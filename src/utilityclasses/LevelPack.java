@@ -0,0 +1,284 @@
+package src.utilityclasses;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import src.gameclasses.Level;
+
+/**
+ * Level pack to exchange many levels between machines: a zip archive with the entries
+ * <pre>
+ * MANIFEST: properties format, version, levels (number of levels) and created (milliseconds)
+ * LEVELS:   the levels as RECORD_PUT records of LevelCodec, each with its own cells
+ * </pre>
+ * Both directions stream: exporting decodes one level at a time through the cache of
+ * LevelSerializer, importing reads BATCH_SIZE records (or BATCH_BYTES), decodes and validates
+ * them in parallel while the next batch is read, and appends every batch with one write to the
+ * disk. At most two batches are in memory. Records longer than MAX_RECORD_LENGTH and levels
+ * whose header is not valid are rejected before anything of their size is allocated.
+ */
+public class LevelPack {
+
+    public static final String FORMAT = "snake-level-pack";
+    public static final int VERSION = 1;
+    private static final String MANIFEST = "MANIFEST";
+    private static final String LEVELS = "LEVELS";
+    private static final int BATCH_SIZE = 512;
+    /**
+     * Largest width or height of a level accepted on import.
+     */
+    private static final int MAX_SIZE = 1024;
+    /**
+     * Longest record accepted on import: a header with the longest identifier and name and the
+     * cells of a level of MAX_SIZE * MAX_SIZE without any runs (two bytes per cell).
+     */
+    private static final int MAX_RECORD_LENGTH = LevelCodec.RECORD_OVERHEAD + (1 << 18)
+        + 2 * MAX_SIZE * MAX_SIZE;
+    private static final int BATCH_BYTES = 1 << 24;
+
+    /**
+     * Numbers of an import or export.
+     */
+    public static class Report {
+
+        public int levels;
+        public int rejected;
+        public long bytes;
+        public long nanos;
+
+        public double get_levels_per_second() {
+            return levels / (nanos / 1e9);
+        }
+
+        public double get_megabytes_per_second() {
+            return bytes / 1e6 / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d levels, %d rejected, %d bytes in %.1f ms (%.0f levels/s, "
+                    + "%.1f MB/s)", levels, rejected, bytes, nanos / 1e6,
+                get_levels_per_second(), get_megabytes_per_second());
+        }
+    }
+
+    /**
+     * Usage: LevelPack export|import file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: LevelPack export|import file");
+            return;
+        }
+        if (args[0].equals("export")) {
+            LevelSerializer.export_pack(args[1]);
+        } else {
+            LevelSerializer.import_pack(args[1]);
+        }
+    }
+
+    /**
+     * Writes the levels of a query to a pack file.
+     */
+    public static Report export_pack(String file_name, LevelQuery query) throws IOException {
+        long start = System.nanoTime();
+        List<LevelCodec.Header> headers = query.get_headers();
+        Report report = new Report();
+        try (FileOutputStream file_stream = new FileOutputStream(file_name);
+            ZipOutputStream zip_stream = new ZipOutputStream(
+                new BufferedOutputStream(file_stream))) {
+            Properties manifest = new Properties();
+            manifest.setProperty("format", FORMAT);
+            manifest.setProperty("version", Integer.toString(VERSION));
+            manifest.setProperty("levels", Integer.toString(headers.size()));
+            manifest.setProperty("created", Long.toString(System.currentTimeMillis()));
+            zip_stream.putNextEntry(new ZipEntry(MANIFEST));
+            OutputStreamWriter writer = new OutputStreamWriter(zip_stream,
+                StandardCharsets.UTF_8);
+            manifest.store(writer, null);
+            writer.flush();
+            zip_stream.closeEntry();
+
+            zip_stream.putNextEntry(new ZipEntry(LEVELS));
+            DataOutputStream output_stream = new DataOutputStream(zip_stream);
+            for (LevelCodec.Header header : headers) {
+                LevelCodec.Entry entry = LevelSerializer.get_level(query.get_index(), header);
+                if (entry == null) {
+                    report.rejected++;
+                    continue;
+                }
+                output_stream.write(LevelCodec.put_record(
+                    LevelCodec.Header.of(entry.identifier, entry.level),
+                    LevelCodec.encode_cells(entry.level.game_board)));
+                report.levels++;
+            }
+            output_stream.flush();
+            zip_stream.closeEntry();
+            zip_stream.finish();
+            zip_stream.flush();
+            file_stream.getFD().sync();
+            report.bytes = file_stream.getChannel().position();
+        }
+        report.nanos = System.nanoTime() - start;
+        System.out.println("[Export] " + report);
+        return report;
+    }
+
+    /**
+     * Adds the levels of a pack file, replacing levels with the same name. Records which are
+     * broken or describe no valid level are skipped and counted as rejected.
+     */
+    public static Report import_pack(String file_name) throws IOException {
+        long start = System.nanoTime();
+        Report report = new Report();
+        AtomicInteger rejected = new AtomicInteger();
+        try (FileInputStream file_stream = new FileInputStream(file_name);
+            ZipInputStream zip_stream = new ZipInputStream(
+                new BufferedInputStream(file_stream))) {
+            ZipEntry zip_entry = zip_stream.getNextEntry();
+            if (zip_entry == null || !zip_entry.getName().equals(MANIFEST)) {
+                throw new IOException("no manifest");
+            }
+            Properties manifest = new Properties();
+            manifest.load(new InputStreamReader(zip_stream, StandardCharsets.UTF_8));
+            if (!FORMAT.equals(manifest.getProperty("format"))) {
+                throw new IOException("not a level pack");
+            }
+            if (Integer.parseInt(manifest.getProperty("version", "0")) > VERSION) {
+                throw new IOException("unknown pack version " + manifest.getProperty("version"));
+            }
+            int num_levels = Integer.parseInt(manifest.getProperty("levels", "0"));
+            zip_entry = zip_stream.getNextEntry();
+            if (zip_entry == null || !zip_entry.getName().equals(LEVELS)) {
+                throw new IOException("no levels");
+            }
+
+            DataInputStream input_stream = new DataInputStream(zip_stream);
+            CompletableFuture<List<LevelCodec.Entry>> decoding = null;
+            int read = 0;
+            while (read < num_levels) {
+                List<LevelCodec.Record> batch = new ArrayList<>(BATCH_SIZE);
+                long batch_bytes = 0;
+                for (; read < num_levels && batch.size() < BATCH_SIZE
+                    && batch_bytes < BATCH_BYTES; read++) {
+                    try {
+                        LevelCodec.Record record = LevelCodec.read_record(input_stream,
+                            MAX_RECORD_LENGTH);
+                        batch.add(record);
+                        batch_bytes += record.length();
+                    } catch (IOException e) {
+                        // the rest of the stream is out of step
+                        System.out.println("[Import] Dropped broken record " + read + ": "
+                            + e.getMessage());
+                        rejected.addAndGet(num_levels - read);
+                        read = num_levels;
+                    }
+                }
+                CompletableFuture<List<LevelCodec.Entry>> next = CompletableFuture
+                    .supplyAsync(() -> decode(batch, rejected));
+                if (decoding != null) {
+                    store(decoding.join(), report);
+                }
+                decoding = next;
+            }
+            if (decoding != null) {
+                store(decoding.join(), report);
+            }
+            report.bytes = file_stream.getChannel().position();
+        }
+        report.rejected = rejected.get();
+        report.nanos = System.nanoTime() - start;
+        System.out.println("[Import] " + report);
+        return report;
+    }
+
+    private static void store(List<LevelCodec.Entry> entries, Report report) throws IOException {
+        LevelSerializer.add_levels(entries);
+        report.levels += entries.size();
+    }
+
+    private static List<LevelCodec.Entry> decode(List<LevelCodec.Record> batch,
+        AtomicInteger rejected) {
+        return batch.parallelStream()
+            .map(record -> {
+                LevelCodec.Entry entry = decode(record);
+                if (entry == null) {
+                    rejected.incrementAndGet();
+                }
+                return entry;
+            })
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Decodes a record of a pack, or returns null if it is no valid level. The header is checked
+     * before the board is allocated.
+     */
+    private static LevelCodec.Entry decode(LevelCodec.Record record) {
+        if (record.type != LevelCodec.RECORD_PUT) {
+            return null;
+        }
+        try {
+            DataInputStream input_stream = new DataInputStream(
+                new ByteArrayInputStream(record.payload));
+            LevelCodec.Header header = LevelCodec.read_header(input_stream);
+            if (!is_valid(header) || header.cells_length < 0
+                || header.cells_length > input_stream.available()) {
+                return null;
+            }
+            byte[] cells = new byte[header.cells_length];
+            input_stream.readFully(cells);
+            Level level = header.to_level(
+                LevelCodec.decode_cells(cells, header.width, header.height));
+            return is_valid(level) ? new LevelCodec.Entry(header.identifier, level) : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean is_valid(LevelCodec.Header header) {
+        int width = header.width;
+        int height = header.height;
+        return width >= 1 && height >= 1 && width <= MAX_SIZE && height <= MAX_SIZE
+            && header.direction >= 0 && header.direction <= 3
+            && is_inside(header.head_x, header.head_y, width, height)
+            && is_inside(header.tail_x, header.tail_y, width, height);
+    }
+
+    /**
+     * Checks the cells of a level whose header is valid.
+     */
+    private static boolean is_valid(Level level) {
+        for (Integer[] row : level.game_board) {
+            for (Integer cell : row) {
+                if (cell < 0 || cell > 3) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean is_inside(int x, int y, int width, int height) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
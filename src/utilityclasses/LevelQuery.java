@@ -0,0 +1,116 @@
+package src.utilityclasses;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import src.gameclasses.Level;
+
+/**
+ * Query for levels by size, name prefix and modifiable flag, e.g.
+ * <pre>
+ * LevelSerializer.query().size(32, 18).modifiable(true).get_levels()
+ * </pre>
+ * The most selective secondary index of the LevelIndex gives the candidates, the other conditions
+ * are checked on them. Large candidate sets are filtered and decoded in parallel; the results are
+ * built with collectors, so no level is lost.
+ */
+public class LevelQuery {
+
+    /**
+     * Number of levels from which on the query runs in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private final LevelIndex index;
+    private int width = -1;
+    private int height = -1;
+    private String name_prefix;
+    private Boolean modifiable;
+
+    LevelQuery(LevelIndex index) {
+        this.index = index;
+    }
+
+    public LevelQuery size(int width, int height) {
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    public LevelQuery name_prefix(String name_prefix) {
+        this.name_prefix = name_prefix;
+        return this;
+    }
+
+    public LevelQuery modifiable(boolean modifiable) {
+        this.modifiable = modifiable;
+        return this;
+    }
+
+    LevelIndex get_index() {
+        return index;
+    }
+
+    private boolean matches(LevelCodec.Header header) {
+        return (width == -1 || (header.width == width && header.height == height))
+            && (name_prefix == null || header.identifier.startsWith(name_prefix))
+            && (modifiable == null || header.modifiable == modifiable);
+    }
+
+    Stream<LevelCodec.Header> stream() {
+        List<LevelCodec.Header> candidates = index.get_all();
+        if (width != -1) {
+            candidates = smaller(candidates, index.get_by_size(width, height));
+        }
+        if (modifiable != null) {
+            candidates = smaller(candidates, index.get_by_modifiable(modifiable));
+        }
+        if (name_prefix != null) {
+            candidates = smaller(candidates, index.get_by_prefix(name_prefix));
+        }
+        Stream<LevelCodec.Header> stream = (candidates.size() >= PARALLEL_THRESHOLD)
+            ? candidates.parallelStream() : candidates.stream();
+        return stream.filter(this::matches);
+    }
+
+    private static List<LevelCodec.Header> smaller(List<LevelCodec.Header> a,
+        List<LevelCodec.Header> b) {
+        return (b.size() < a.size()) ? b : a;
+    }
+
+    /**
+     * Returns the headers of the matching levels without decoding any board.
+     */
+    public List<LevelCodec.Header> get_headers() {
+        return stream().collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the names of the matching levels without decoding any board.
+     */
+    public List<String> get_identifiers() {
+        return stream().map(header -> header.identifier).collect(Collectors.toList());
+    }
+
+    public int count() {
+        return (int) stream().count();
+    }
+
+    /**
+     * Returns the matching levels as a Map of level name to Level Object.
+     */
+    public Map<String, Level> get_levels() {
+        Stream<LevelCodec.Entry> entries = stream()
+            .map(header -> LevelSerializer.get_level(index, header))
+            .filter(Objects::nonNull);
+        if (entries.isParallel()) {
+            return entries.collect(Collectors.toConcurrentMap(entry -> entry.identifier,
+                entry -> entry.level));
+        }
+        return entries.collect(Collectors.toMap(entry -> entry.identifier, entry -> entry.level,
+            (a, b) -> a, HashMap::new));
+    }
+}
@@ -0,0 +1,70 @@
+package src.utilityclasses;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import src.gameclasses.LevelRating;
+
+/**
+ * Object to store and load the level ratings to 'level_ratings.dat' next to 'levels.dat'. The
+ * ratings are kept in their own file, so the level data file stays readable by older versions.
+ * The file is replaced as an AtomicFile.
+ */
+public class LevelRatingSerializer {
+
+    private static final String RATING_FILE = "level_ratings.dat";
+
+    /**
+     * Uses Object Streams to load the ratings as a Map of level name to LevelRating. Returns an
+     * empty Map if there is no rating file yet.
+     */
+    public static Map<String, LevelRating> load_file() {
+        Map<String, LevelRating> ratings = new HashMap<>();
+        try {
+            ObjectInputStream inputStream = new ObjectInputStream(
+                new ByteArrayInputStream(AtomicFile.read(RATING_FILE)));
+            ratings = (Map<String, LevelRating>) inputStream.readObject();
+            inputStream.close();
+        } catch (FileNotFoundException e) {
+            System.out.println("[Load] FNF Error: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("[Load] IO Error: " + e.getMessage());
+        } catch (ClassNotFoundException e) {
+            System.out.println("[Load] CNF Error: " + e.getMessage());
+        }
+        return ratings;
+    }
+
+    /**
+     * Loads the rating file, replaces the ratings of the given levels and saves the new file.
+     */
+    public static void add_ratings(Map<String, LevelRating> new_ratings) {
+        Map<String, LevelRating> ratings = load_file();
+        ratings.putAll(new_ratings);
+        update_file(ratings);
+    }
+
+    /**
+     * Uses Object Streams to store the ratings to 'level_ratings.dat'. The ratings are on the
+     * disk when the method returns.
+     */
+    public static void update_file(Map<String, LevelRating> ratings) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output_stream = new ObjectOutputStream(bytes)) {
+            output_stream.writeObject(new HashMap<>(ratings));
+        } catch (IOException e) {
+            System.out.println("[Update] IO Error: " + e.getMessage());
+            return;
+        }
+        try {
+            AtomicFile.write(RATING_FILE, bytes.toByteArray());
+        } catch (IOException e) {
+            System.out.println("[Update] IO Error: " + e.getMessage());
+        }
+    }
+}
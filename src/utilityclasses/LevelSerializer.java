@@ -1,114 +1,842 @@
 package src.utilityclasses;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import src.gameclasses.Level;
 
 /**
- * Object to store and load level data to 'levels.dat'.
+ * Object to store and load level data to 'levels.bin' in the format of LevelCodec. If there is no
+ * such file yet the levels are migrated once from the Java serialized 'levels.dat'.
+ * <p>
+ * Only the headers of the levels are kept in memory (index); the cells of a level are read and
+ * decoded when the level is asked for and then kept in a small cache. The index is read again
+ * when the modification time or the length of the file changes.
+ * <p>
+ * Adding or removing a level appends a single record to the file, so it costs the size of the
+ * level and a crash can at most lose the record being written, which is dropped on the next load.
+ * Replaced and removed levels stay in the file as garbage until a background thread rewrites the
+ * live records into a new file (compaction).
+ * <p>
+ * Boards are stored once by content (see LevelCodec) and decoded boards are cached by content,
+ * so levels sharing walls share the board on disk and in memory.
  */
 public class LevelSerializer {
 
-    private static final String LEVEL_FILE = "levels.dat";
+    private static final String LEVEL_FILE = "levels.bin";
+    private static final String COMPACT_FILE = "levels.bin.tmp";
+    private static final String LEGACY_LEVEL_FILE = "levels.dat";
     /**
-     * Map of level name to Level Object.
+     * Number of decoded levels kept in memory.
      */
-    private static Map<String, Level> all_levels = new HashMap<>();
-    private static ObjectOutputStream output_stream = null;
+    private static final int CACHE_SIZE = 16;
+    /**
+     * The file is compacted when there are more bytes of garbage than this and than live bytes.
+     */
+    private static final long COMPACT_MIN_GARBAGE = 64 * 1024;
 
     /**
-     * Returns all levels that fit given size requirements as a Map of level name to Level Object.
+     * Headers of the levels in the file, replaced as a whole when the file changes.
      */
-    public static Map<String, Level> get_all_levels(int num_rect_x, int num_rect_y) {
+    private static volatile LevelIndex index = LevelIndex.EMPTY;
+    /**
+     * Map of level name to header of the live levels, the source of index.
+     */
+    private static Map<String, LevelCodec.Header> live = new LinkedHashMap<>();
+    /**
+     * Shared boards in the file by hash, including boards no level uses anymore (garbage).
+     */
+    private static Map<Long, LevelCodec.Board> boards = new HashMap<>();
+    private static long index_modified = -1;
+    private static long index_length = -1;
+    private static long garbage;
+    private static boolean compaction_scheduled;
+    /**
+     * Number of times the file was replaced, so a compaction notices a replacement while it
+     * copies the records.
+     */
+    private static long replacements;
+    /**
+     * Position of a broken record the file could not be read past, -1 if there is none. The
+     * file is not written while it is broken, as records after it would be lost on the next
+     * load.
+     */
+    private static long broken_at = -1;
+    /**
+     * Held for reading while cells are read at the offsets of the index, held for writing while
+     * the file is replaced, which moves all records.
+     */
+    private static final ReadWriteLock file_lock = new ReentrantReadWriteLock();
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "level-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    /**
+     * Decoded boards by board hash, or by header for levels with their own cells (headers of an
+     * older index are never asked for again and drop out). Levels sharing a board share the
+     * entry; the boards are never handed out, only copies.
+     */
+    private static final Map<Object, Integer[][]> cache =
+        new LinkedHashMap<Object, Integer[][]>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Integer[][]> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /**
+     * Returns the current index, reading the headers again if the file changed.
+     */
+    private static synchronized LevelIndex current_index() {
         load_file();
-        Map<String, Level> filtered_levels = new HashMap<>();
-        all_levels.entrySet().parallelStream().forEach(stringLevelEntry -> {
-            Level level = stringLevelEntry.getValue();
-            if (level.get_width() == num_rect_x && level.get_height() == num_rect_y) {
-                filtered_levels.put(stringLevelEntry.getKey(), stringLevelEntry.getValue());
+        return index;
+    }
+
+    /**
+     * Starts a query on the current levels.
+     */
+    public static LevelQuery query() {
+        return new LevelQuery(current_index());
+    }
+
+    /**
+     * Returns the names of all levels without decoding any board.
+     */
+    public static Set<String> get_identifiers() {
+        Set<String> identifiers = new LinkedHashSet<>();
+        for (LevelCodec.Header header : current_index().get_all()) {
+            identifiers.add(header.identifier);
+        }
+        return identifiers;
+    }
+
+    /**
+     * Returns the names of all levels of a given size without decoding any board.
+     */
+    public static List<String> get_identifiers(int num_rect_x, int num_rect_y) {
+        return query().size(num_rect_x, num_rect_y).get_identifiers();
+    }
+
+    /**
+     * Returns the header of a level (everything but the board) or null if there is none.
+     */
+    public static LevelCodec.Header get_header(String identifier) {
+        return current_index().get(identifier);
+    }
+
+    /**
+     * Returns the headers of all levels.
+     */
+    public static List<LevelCodec.Header> get_headers() {
+        return current_index().get_all();
+    }
+
+    /**
+     * Returns a level or null if there is none. Every call returns a new Level Object, so the
+     * caller may change it.
+     */
+    public static Level get_level(String identifier) {
+        LevelIndex current = current_index();
+        LevelCodec.Header header = current.get(identifier);
+        if (header == null) {
+            return null;
+        }
+        LevelCodec.Entry entry = get_level(current, header);
+        return (entry == null) ? null : entry.level;
+    }
+
+    /**
+     * Returns a copy of the level of a header of the index, decoding it if it is not cached.
+     * Safe to call from many threads; the decoding runs in parallel.
+     */
+    static LevelCodec.Entry get_level(LevelIndex current, LevelCodec.Header header) {
+        Object key = (header.board_hash != 0) ? (Object) header.board_hash : header;
+        Integer[][] board;
+        synchronized (cache) {
+            board = cache.get(key);
+        }
+        if (board == null) {
+            byte[] cells = null;
+            file_lock.readLock().lock();
+            try {
+                if (current == index) {
+                    cells = read_cells(header.cells_offset, header.cells_length);
+                }
+            } catch (IOException e) {
+                System.out.println("[Load] IO Error: " + e.getMessage());
+                return null;
+            } finally {
+                file_lock.readLock().unlock();
             }
-        });
-        return filtered_levels;
+            if (cells == null) {
+                // the index changed meanwhile, the offset might be wrong
+                LevelIndex latest = current_index();
+                LevelCodec.Header latest_header = latest.get(header.identifier);
+                return (latest_header == null) ? null : get_level(latest, latest_header);
+            }
+            try {
+                board = LevelCodec.share_rows(LevelCodec.decode_cells(cells, header.width,
+                    header.height));
+            } catch (IOException e) {
+                System.out.println("[Load] IO Error: " + e.getMessage());
+                return null;
+            }
+            synchronized (cache) {
+                cache.put(key, board);
+            }
+        }
+        Integer[][] game_board = new Integer[board.length][];
+        for (int y = 0; y < game_board.length; y++) {
+            game_board[y] = Arrays.copyOf(board[y], board[y].length);
+        }
+        header.add_snake(game_board);
+        return new LevelCodec.Entry(header.identifier, header.to_level(game_board));
     }
 
     /**
-     * Returns all levels as a Map of level name to Level Object.
+     * Returns all levels that fit given size requirements as a Map of level name to Level Object.
+     */
+    public static Map<String, Level> get_all_levels(int num_rect_x, int num_rect_y) {
+        return query().size(num_rect_x, num_rect_y).get_levels();
+    }
+
+    /**
+     * Returns all levels as a Map of level name to Level Object. Decodes every board, callers
+     * which only need the names should use get_identifiers().
      */
     public static Map<String, Level> get_all_levels() {
+        return query().get_levels();
+    }
+
+    /**
+     * Writes all levels to a level pack (see LevelPack).
+     */
+    public static LevelPack.Report export_pack(String file_name) throws IOException {
+        return LevelPack.export_pack(file_name, query());
+    }
+
+    /**
+     * Adds the levels of a level pack (see LevelPack), replacing levels with the same name.
+     */
+    public static LevelPack.Report import_pack(String file_name) throws IOException {
+        return LevelPack.import_pack(file_name);
+    }
+
+    /**
+     * Adds (or replaces) a level by appending it to the file. The board of the level is appended
+     * too unless an equal board is in the file already. The level can be loaded at once; the
+     * returned future completes when it is on the disk.
+     */
+    public static synchronized CompletableFuture<Void> add_gameBoard(String identifier,
+        Integer[][] gameBoard, Integer[] head, Integer[] tail, Boolean modifiable,
+        Integer direction, String name) {
         load_file();
-        return all_levels;
+        Level level = new Level(gameBoard, head, tail, modifiable, direction, name);
+        CompletableFuture<Void> durable;
+        try (FileOutputStream output_stream = open_log()) {
+            put(output_stream, identifier, level);
+            durable = close_log();
+        } catch (IOException e) {
+            System.out.println("[Update] IO Error: " + e.getMessage());
+            durable = failed(e);
+        }
+        index = new LevelIndex(new ArrayList<>(live.values()));
+        schedule_compaction();
+        return durable;
     }
 
     /**
-     * Loads the level data file, adds a level and saves the new file.
+     * Adds (or replaces) many levels with one write to the disk, e.g. when a level pack is
+     * imported.
      */
-    public static void add_gameBoard(String identifier, Integer[][] gameBoard, Integer[] head,
-        Integer[] tail, Boolean modifiable, Integer direction, String name) {
+    static synchronized void add_levels(List<LevelCodec.Entry> entries) throws IOException {
         load_file();
-        all_levels.put(identifier, new Level(gameBoard, head, tail, modifiable, direction, name));
-        update_file();
+        try (FileOutputStream output_stream = open_log()) {
+            for (LevelCodec.Entry entry : entries) {
+                put(output_stream, entry.identifier, entry.level);
+            }
+            output_stream.getFD().sync();
+            note_length();
+        } finally {
+            index = new LevelIndex(new ArrayList<>(live.values()));
+            schedule_compaction();
+        }
+    }
+
+    /**
+     * Appends the records of a level, and of its board if the file has no equal board yet, to
+     * the open file.
+     */
+    private static void put(FileOutputStream output_stream, String identifier, Level level)
+        throws IOException {
+        LevelCodec.Header header = LevelCodec.Header.of(identifier, level);
+        Integer[][] board = LevelCodec.remove_snake(header, level.game_board);
+        byte[] cells = LevelCodec.encode_cells(board);
+        long hash = LevelCodec.board_hash(header.width, header.height, cells);
+        LevelCodec.Board shared = boards.get(hash);
+        if (shared == null) {
+            byte[] record = LevelCodec.board_record(hash, header.width, header.height, cells);
+            shared = new LevelCodec.Board();
+            shared.hash = hash;
+            shared.width = header.width;
+            shared.height = header.height;
+            shared.record_offset = append(output_stream, record);
+            shared.record_length = record.length;
+            shared.cells_length = cells.length;
+            shared.cells_offset = shared.record_offset + record.length - Integer.BYTES
+                - cells.length;
+            boards.put(hash, shared);
+            // unused until the level record is written
+            garbage += record.length;
+        } else if (shared.width != header.width || shared.height != header.height
+            || !Arrays.equals(read_cells(shared.cells_offset, shared.cells_length), cells)) {
+            // different board with the same hash, the level keeps its own cells
+            shared = null;
+        }
+        byte[] record;
+        if (shared != null) {
+            header.board_hash = hash;
+            header.cells_offset = shared.cells_offset;
+            header.cells_length = shared.cells_length;
+            record = LevelCodec.put_ref_record(header);
+        } else {
+            header.snake_mask = 0;
+            cells = LevelCodec.encode_cells(level.game_board);
+            record = LevelCodec.put_record(header, cells);
+        }
+        long offset = append(output_stream, record);
+        header.record_offset = offset;
+        header.record_length = record.length;
+        if (shared == null) {
+            header.cells_length = cells.length;
+            header.cells_offset = offset + record.length - Integer.BYTES - cells.length;
+        } else {
+            use_board(shared);
+        }
+        LevelCodec.Header old = live.put(identifier, header);
+        if (old != null) {
+            release(old);
+        }
     }
 
     /**
-     * Loads the level data file, removes a level and saves the new file.
+     * Removes a level by appending a delete record to the file. The returned future completes
+     * when the removal is on the disk.
      */
-    public static void remove_gameBoard(String identifier) {
+    public static synchronized CompletableFuture<Void> remove_gameBoard(String identifier) {
         load_file();
-        all_levels.remove(identifier);
-        update_file();
+        LevelCodec.Header old = live.get(identifier);
+        if (old == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> durable;
+        try (FileOutputStream output_stream = open_log()) {
+            byte[] record = LevelCodec.delete_record(identifier);
+            append(output_stream, record);
+            durable = close_log();
+            garbage += record.length;
+        } catch (IOException e) {
+            System.out.println("[Update] IO Error: " + e.getMessage());
+            return failed(e);
+        }
+        live.remove(identifier);
+        release(old);
+        index = new LevelIndex(new ArrayList<>(live.values()));
+        schedule_compaction();
+        return durable;
+    }
+
+    private static CompletableFuture<Void> failed(IOException e) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static void use_board(LevelCodec.Board board) {
+        if (board.references == 0) {
+            garbage -= board.record_length;
+        }
+        board.references++;
     }
 
     /**
-     * Uses Object Streams to load the level data file 'levels.dat'.
+     * Counts the record of a replaced or removed level, and its board if no other level uses
+     * it, as garbage.
      */
-    private static void load_file() {
-        try {
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(LEVEL_FILE));
-            all_levels = (Map<String, Level>) inputStream.readObject();
-        } catch (FileNotFoundException e) {
-            System.out.println("[Load] FNF Error: " + e.getMessage());
+    private static void release(LevelCodec.Header header) {
+        garbage += header.record_length;
+        LevelCodec.Board board = boards.get(header.board_hash);
+        if (header.board_hash != 0 && board != null && --board.references == 0) {
+            garbage += board.record_length;
+        }
+    }
+
+    /**
+     * Opens the file for appending records, creating it if there is none. Throws an IOException
+     * while the file is broken (see load_file).
+     */
+    private static FileOutputStream open_log() throws IOException {
+        if (broken_at != -1) {
+            throw new IOException(LEVEL_FILE + " is broken at " + broken_at);
+        }
+        File file = new File(LEVEL_FILE);
+        boolean is_new = !file.exists() || file.length() == 0;
+        FileOutputStream output_stream = new FileOutputStream(file, true);
+        if (is_new) {
+            DataOutputStream header = new DataOutputStream(output_stream);
+            LevelCodec.write_file_header(header);
+            header.flush();
+        }
+        return output_stream;
+    }
+
+    /**
+     * Appends a record to the open file and returns its offset. The record is readable at once
+     * but only durable once the file is forced to the disk.
+     */
+    private static long append(FileOutputStream output_stream, byte[] record)
+        throws IOException {
+        long offset = output_stream.getChannel().position();
+        output_stream.write(record);
+        return offset;
+    }
+
+    /**
+     * Takes note of the appended records and lets the PersistenceWriter force them to the disk,
+     * together with other writes. Returns the future of the forcing.
+     */
+    private static CompletableFuture<Void> close_log() {
+        note_length();
+        return PersistenceWriter.submit(LEVEL_FILE, () -> new File(LEVEL_FILE).toPath());
+    }
+
+    /**
+     * Takes note of the file as written by this class, so it is not read again.
+     */
+    private static void note_length() {
+        File file = new File(LEVEL_FILE);
+        index_modified = file.lastModified();
+        index_length = file.length();
+    }
+
+    private static void schedule_compaction() {
+        long live_bytes = index_length - garbage;
+        if (!compaction_scheduled && broken_at == -1 && garbage > COMPACT_MIN_GARBAGE
+            && garbage > live_bytes) {
+            compaction_scheduled = true;
+            compactor.execute(LevelSerializer::compact);
+        }
+    }
+
+    /**
+     * Rewrites the used boards and the live records into a new file which replaces the old one.
+     * The records are copied without holding the lock of the class, as the file is only
+     * appended to meanwhile; the lock is only taken to copy what was appended during the copy
+     * and to replace the file. Both files are closed before the replacement, as open files
+     * cannot be replaced on Windows.
+     */
+    private static void compact() {
+        List<long[]> records = new ArrayList<>();
+        Set<Long> copied_boards = new HashSet<>();
+        long copied_length;
+        long replaced;
+        synchronized (LevelSerializer.class) {
+            compaction_scheduled = false;
+            load_file();
+            if (broken_at != -1) {
+                return;
+            }
+            for (LevelCodec.Board board : boards.values()) {
+                if (board.references > 0) {
+                    records.add(new long[]{board.record_offset, board.record_length});
+                    copied_boards.add(board.hash);
+                }
+            }
+            for (LevelCodec.Header header : live.values()) {
+                records.add(new long[]{header.record_offset, header.record_length});
+            }
+            copied_length = index_length;
+            replaced = replacements;
+        }
+        try (RandomAccessFile old_file = new RandomAccessFile(LEVEL_FILE, "r");
+            FileOutputStream file_stream = new FileOutputStream(COMPACT_FILE);
+            DataOutputStream output_stream = new DataOutputStream(
+                new BufferedOutputStream(file_stream))) {
+            LevelCodec.write_file_header(output_stream);
+            for (long[] record : records) {
+                copy_record(old_file, record[0], (int) record[1], output_stream);
+            }
+            output_stream.flush();
+            file_stream.getFD().sync();
         } catch (IOException e) {
-            System.out.println("[Load] IO Error: " + e.getMessage());
-        } catch (ClassNotFoundException e) {
-            System.out.println("[Load] CNF Error: " + e.getMessage());
-        } finally {
-            try {
-                if (output_stream != null) {
-                    output_stream.flush();
-                    output_stream.close();
+            System.out.println("[Compact] IO Error: " + e.getMessage());
+            return;
+        }
+
+        synchronized (LevelSerializer.class) {
+            load_file();
+            if (replacements != replaced || index_length < copied_length) {
+                System.out.println("[Compact] Level file replaced meanwhile");
+                return;
+            }
+            long old_length = index_length;
+            try (RandomAccessFile old_file = new RandomAccessFile(LEVEL_FILE, "r");
+                FileOutputStream file_stream = new FileOutputStream(COMPACT_FILE, true);
+                DataOutputStream output_stream = new DataOutputStream(
+                    new BufferedOutputStream(file_stream))) {
+                // boards which were garbage when the copy started but are used again
+                for (LevelCodec.Board board : boards.values()) {
+                    if (board.references > 0 && board.record_offset < copied_length
+                        && copied_boards.add(board.hash)) {
+                        copy_record(old_file, board.record_offset, board.record_length,
+                            output_stream);
+                    }
                 }
+                copy_record(old_file, copied_length, (int) (index_length - copied_length),
+                    output_stream);
+                output_stream.flush();
+                file_stream.getFD().sync();
             } catch (IOException e) {
-                System.out.println("[Load] IO Error: " + e.getMessage());
+                System.out.println("[Compact] IO Error: " + e.getMessage());
+                return;
+            }
+            if (replace_file()) {
+                System.out.println("[Compact] " + old_length + " -> " + index_length + " bytes");
             }
         }
     }
 
+    private static void copy_record(RandomAccessFile file, long offset, int length,
+        DataOutputStream output_stream) throws IOException {
+        byte[] record = new byte[length];
+        file.seek(offset);
+        file.readFully(record);
+        output_stream.write(record);
+    }
+
     /**
-     * Uses Object Streams to store the level data file to 'levels.dat'.
+     * Moves the written and closed COMPACT_FILE over the level file and reads its headers.
+     * Returns false if the file could not be moved, the level file is then not changed.
      */
-    private static void update_file() {
+    private static boolean replace_file() {
+        file_lock.writeLock().lock();
         try {
-            output_stream = new ObjectOutputStream(new FileOutputStream(LEVEL_FILE));
-            output_stream.writeObject(all_levels);
-        } catch (FileNotFoundException e) {
-            System.out.println("[Update] FNF Error (program will create one): " + e.getMessage());
+            Files.move(new File(COMPACT_FILE).toPath(), new File(LEVEL_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            replacements++;
+            AtomicFile.sync_directory(new File(LEVEL_FILE).toPath());
+            index_modified = -1;
+            load_file();
+            return true;
         } catch (IOException e) {
-            System.out.println("[Update] IO Error: " + e.getMessage());
+            System.out.println("[Compact] IO Error: " + e.getMessage());
+            return false;
         } finally {
-            try {
-                if (output_stream != null) {
-                    output_stream.flush();
-                    output_stream.close();
+            file_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the headers of 'levels.bin' unless the file did not change since the last call,
+     * migrating 'levels.dat' if there is no such file. A record which was only written in part
+     * at the end of the file (from a crash while it was written) is cut off. A whole record which
+     * is broken is skipped. If a record in the middle of the file cannot even be skipped, the
+     * records up to it are loaded and the file is not changed anymore (see open_log).
+     */
+    private static void load_file() {
+        File file = new File(LEVEL_FILE);
+        if (!file.exists() && new File(LEGACY_LEVEL_FILE).exists()) {
+            migrate_legacy_file();
+        }
+        if (file.lastModified() == index_modified && file.length() == index_length) {
+            return;
+        }
+        index_modified = file.lastModified();
+        index_length = file.length();
+        broken_at = -1;
+        Map<String, LevelCodec.Header> headers = new LinkedHashMap<>();
+        Map<Long, LevelCodec.Board> new_boards = new HashMap<>();
+        long position = 0;
+        boolean torn = false;
+        boolean version_1 = false;
+        garbage = 0;
+        try (DataInputStream input_stream = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)))) {
+            version_1 = LevelCodec.read_file_header(input_stream)
+                == LevelCodec.VERSION_WITHOUT_RECORDS;
+            position = LevelCodec.FILE_HEADER_SIZE;
+            while (!version_1 && position < index_length) {
+                LevelCodec.Record record;
+                try {
+                    record = LevelCodec.read_record(input_stream, index_length - position);
+                } catch (LevelCodec.ChecksumException e) {
+                    if (position + e.length == index_length) {
+                        torn = true;
+                        break;
+                    }
+                    System.out.println("[Load] Dropped broken record at " + position);
+                    garbage += e.length;
+                    position += e.length;
+                    continue;
+                } catch (EOFException e) {
+                    torn = true;
+                    break;
+                } catch (IOException e) {
+                    // a zeroed end is a torn write as well
+                    torn = is_zero(file, position);
+                    if (!torn) {
+                        broken_at = position;
+                        System.out.println("[Load] Error: " + LEVEL_FILE + " is broken at "
+                            + position + " (" + e.getMessage() + "), it is not changed");
+                    }
+                    break;
                 }
+                try {
+                    apply_record(record, position, headers, new_boards);
+                } catch (IOException e) {
+                    System.out.println("[Load] Dropped record at " + position + ": "
+                        + e.getMessage());
+                    garbage += record.length();
+                }
+                position += record.length();
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("[Load] FNF Error: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("[Load] IO Error: " + e.getMessage());
+        }
+        if (version_1) {
+            // the file is closed, it is replaced
+            convert_version_1();
+            return;
+        }
+        if (torn) {
+            System.out.println("[Load] Dropped broken end of " + LEVEL_FILE + " at " + position);
+            try (RandomAccessFile broken = new RandomAccessFile(file, "rw")) {
+                broken.setLength(position);
             } catch (IOException e) {
-                System.out.println("[Update] Error: " + e.getMessage());
+                System.out.println("[Load] IO Error: " + e.getMessage());
+            }
+            index_modified = file.lastModified();
+            index_length = file.length();
+        }
+        for (LevelCodec.Board board : new_boards.values()) {
+            if (board.references == 0) {
+                garbage += board.record_length;
+            }
+        }
+        boards = new_boards;
+        live = headers;
+        index = new LevelIndex(new ArrayList<>(headers.values()));
+        schedule_compaction();
+    }
+
+    /**
+     * Applies a record read at a position of the file to the headers and boards.
+     */
+    private static void apply_record(LevelCodec.Record record, long position,
+        Map<String, LevelCodec.Header> headers, Map<Long, LevelCodec.Board> new_boards)
+        throws IOException {
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(record.payload));
+        long cells_end = position + record.length() - Integer.BYTES;
+        LevelCodec.Header header = null;
+        switch (record.type) {
+            case LevelCodec.RECORD_PUT:
+                header = LevelCodec.read_header(payload);
+                header.cells_offset = cells_end - header.cells_length;
+                break;
+            case LevelCodec.RECORD_PUT_REF:
+                header = LevelCodec.read_ref_header(payload);
+                LevelCodec.Board shared = new_boards.get(header.board_hash);
+                if (shared == null) {
+                    throw new IOException("missing board of " + header.identifier);
+                }
+                header.cells_offset = shared.cells_offset;
+                header.cells_length = shared.cells_length;
+                shared.references++;
+                break;
+            case LevelCodec.RECORD_BOARD:
+                LevelCodec.Board board = LevelCodec.read_board(payload, record.payload.length);
+                board.record_offset = position;
+                board.record_length = record.length();
+                board.cells_offset = cells_end - board.cells_length;
+                LevelCodec.Board old_board = new_boards.put(board.hash, board);
+                if (old_board != null) {
+                    board.references = old_board.references;
+                    garbage += old_board.record_length;
+                }
+                break;
+            default:
+                LevelCodec.Header removed = headers.remove(payload.readUTF());
+                garbage += record.length();
+                if (removed != null) {
+                    garbage += removed.record_length;
+                    unreference(new_boards, removed);
+                }
+                break;
+        }
+        if (header != null) {
+            header.record_offset = position;
+            header.record_length = record.length();
+            LevelCodec.Header old = headers.put(header.identifier, header);
+            if (old != null) {
+                garbage += old.record_length;
+                unreference(new_boards, old);
+            }
+        }
+    }
+
+    /**
+     * Whether the file holds only zero bytes from a position to its end.
+     */
+    private static boolean is_zero(File file, long position) throws IOException {
+        try (DataInputStream input_stream = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)))) {
+            input_stream.skipBytes((int) position);
+            int b;
+            while ((b = input_stream.read()) != -1) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static void unreference(Map<Long, LevelCodec.Board> boards,
+        LevelCodec.Header header) {
+        if (header.board_hash != 0) {
+            boards.get(header.board_hash).references--;
+        }
+    }
+
+    private static byte[] read_cells(long offset, int length) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(LEVEL_FILE, "r")) {
+            byte[] cells = new byte[length];
+            file.seek(offset);
+            file.readFully(cells);
+            return cells;
+        }
+    }
+
+    /**
+     * Writes the levels to COMPACT_FILE, every distinct board once, and moves it over the level
+     * file.
+     */
+    private static void write_levels(Map<String, Level> levels) throws IOException {
+        Map<Long, byte[]> written_boards = new HashMap<>();
+        try (FileOutputStream file_stream = new FileOutputStream(COMPACT_FILE);
+            DataOutputStream output_stream = new DataOutputStream(
+                new BufferedOutputStream(file_stream))) {
+            LevelCodec.write_file_header(output_stream);
+            for (Map.Entry<String, Level> entry : levels.entrySet()) {
+                Level level = entry.getValue();
+                LevelCodec.Header header = LevelCodec.Header.of(entry.getKey(), level);
+                byte[] cells = LevelCodec.encode_cells(
+                    LevelCodec.remove_snake(header, level.game_board));
+                long hash = LevelCodec.board_hash(header.width, header.height, cells);
+                byte[] written = written_boards.get(hash);
+                if (written == null) {
+                    output_stream.write(LevelCodec.board_record(hash, header.width,
+                        header.height, cells));
+                    written_boards.put(hash, cells);
+                    written = cells;
+                }
+                if (Arrays.equals(written, cells)) {
+                    header.board_hash = hash;
+                    output_stream.write(LevelCodec.put_ref_record(header));
+                } else {
+                    header.snake_mask = 0;
+                    output_stream.write(LevelCodec.put_record(header,
+                        LevelCodec.encode_cells(level.game_board)));
+                }
+            }
+            output_stream.flush();
+            file_stream.getFD().sync();
+        }
+        if (!replace_file()) {
+            throw new IOException("cannot replace " + LEVEL_FILE);
+        }
+    }
+
+    /**
+     * Converts a 'levels.bin' of version 1 (one block of levels, rewritten on every change) into
+     * the record format.
+     */
+    private static void convert_version_1() {
+        Map<String, Level> levels = new LinkedHashMap<>();
+        try (DataInputStream input_stream = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(LEVEL_FILE)))) {
+            LevelCodec.read_file_header(input_stream);
+            int num_levels = input_stream.readInt();
+            for (int i = 0; i < num_levels; i++) {
+                LevelCodec.Entry entry = LevelCodec.read_level(input_stream);
+                levels.put(entry.identifier, entry.level);
             }
+        } catch (IOException e) {
+            System.out.println("[Migrate] IO Error: " + e.getMessage());
+            return;
+        }
+        try {
+            write_levels(levels);
+        } catch (IOException e) {
+            System.out.println("[Migrate] IO Error: " + e.getMessage());
+            return;
+        }
+        System.out.println("[Migrate] " + levels.size() + " levels converted to records");
+    }
+
+    /**
+     * Uses Object Streams to load the legacy level data file 'levels.dat' and stores the levels
+     * to 'levels.bin'. The legacy file is kept.
+     */
+    private static void migrate_legacy_file() {
+        Map<String, Level> legacy_levels;
+        try (ObjectInputStream input_stream = new ObjectInputStream(
+            new FileInputStream(LEGACY_LEVEL_FILE))) {
+            legacy_levels = (Map<String, Level>) input_stream.readObject();
+        } catch (IOException e) {
+            System.out.println("[Migrate] IO Error: " + e.getMessage());
+            return;
+        } catch (ClassNotFoundException e) {
+            System.out.println("[Migrate] CNF Error: " + e.getMessage());
+            return;
+        }
+        try {
+            write_levels(legacy_levels);
+        } catch (IOException e) {
+            System.out.println("[Migrate] IO Error: " + e.getMessage());
+            return;
         }
+        System.out.println("[Migrate] " + legacy_levels.size() + " levels moved from "
+            + LEGACY_LEVEL_FILE + " to " + LEVEL_FILE);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package src.utilityclasses;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single thread which does the file writes of the serializers, so the Swing thread never waits
+ * for the disk. Writes are queued in a bounded queue (callers wait if it is full) and every
+ * caller gets a future which completes once its data is on the disk.
+ * <p>
+ * A write with a key replaces a queued write with the same key which did not start yet, e.g.
+ * many settings changes in a row write the file once. The thread takes all queued writes at
+ * once, runs them and then forces every written file to the disk a single time (group commit).
+ * Queued writes are finished when the program exits.
+ */
+public class PersistenceWriter {
+
+    private static final int QUEUE_SIZE = 256;
+    /**
+     * Longest time the program waits for queued writes on exit.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    /**
+     * A write of a file; returns the file to force to the disk, or null if there is none.
+     */
+    public interface Write {
+
+        Path write() throws IOException;
+    }
+
+    private static class Task {
+
+        private volatile Write write;
+        private final Object key;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Task(Object key, Write write) {
+            this.key = key;
+            this.write = write;
+        }
+    }
+
+    private static final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    /**
+     * Queued tasks with a key which did not start yet.
+     */
+    private static final Map<Object, Task> waiting = new HashMap<>();
+
+    static {
+        Thread writer = new Thread(PersistenceWriter::run, "Persistence writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                flush().get(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                System.out.println("[Update] Error: unwritten data on exit " + e);
+            }
+        }, "Persistence flush"));
+    }
+
+    /**
+     * Queues a write. If a write with the same key (which may be null for none) is still queued,
+     * it is replaced and its future is returned.
+     */
+    public static CompletableFuture<Void> submit(Object key, Write write) {
+        synchronized (waiting) {
+            Task task = (key == null) ? null : waiting.get(key);
+            if (task != null) {
+                task.write = write;
+                return task.future;
+            }
+            task = new Task(key, write);
+            if (key != null) {
+                waiting.put(key, task);
+            }
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                waiting.remove(key);
+                task.future.completeExceptionally(e);
+            }
+            return task.future;
+        }
+    }
+
+    /**
+     * Returns a future which completes once every write queued so far is on the disk.
+     */
+    public static CompletableFuture<Void> flush() {
+        return submit(null, () -> null);
+    }
+
+    private static void run() {
+        List<Task> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch);
+            synchronized (waiting) {
+                for (Task task : batch) {
+                    if (task.key != null) {
+                        waiting.remove(task.key);
+                    }
+                }
+            }
+            Map<Path, List<Task>> written = new LinkedHashMap<>();
+            for (Task task : batch) {
+                try {
+                    Path path = task.write.write();
+                    if (path != null) {
+                        written.computeIfAbsent(path, p -> new ArrayList<>()).add(task);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("[Update] IO Error: " + e.getMessage());
+                    task.future.completeExceptionally(e);
+                }
+            }
+            for (Map.Entry<Path, List<Task>> entry : written.entrySet()) {
+                try {
+                    force(entry.getKey());
+                } catch (IOException e) {
+                    System.out.println("[Update] IO Error: " + e.getMessage());
+                    for (Task task : entry.getValue()) {
+                        task.future.completeExceptionally(e);
+                    }
+                }
+            }
+            for (Task task : batch) {
+                task.future.complete(null);
+            }
+            batch.clear();
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (NoSuchFileException e) {
+            // replaced meanwhile, e.g. by a compaction which forced its own file
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package src.utilityclasses;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import src.gameclasses.Replay;
+
+/**
+ * Object to store and load replays. Every replay is stored in its own file in the folder
+ * 'replays/', so saving a game never touches the replays of other games. The files are written
+ * as AtomicFiles, so a crash never leaves a half written replay.
+ */
+public class ReplaySerializer {
+
+    public static final String REPLAY_DIR = "replays";
+    private static final String REPLAY_EXTENSION = ".replay";
+
+    /**
+     * Uses Object Streams to store the replay into a new file in 'replays/'. The replay is
+     * serialized at once and written by the PersistenceWriter; the returned future completes
+     * when it is on the disk.
+     */
+    public static CompletableFuture<Void> save(Replay replay) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        File dir = new File(REPLAY_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.out.println("[Save] Error: cannot create " + REPLAY_DIR);
+            failed.completeExceptionally(new IOException("cannot create " + REPLAY_DIR));
+            return failed;
+        }
+        String file_name = System.currentTimeMillis() + "_" + replay.seed + REPLAY_EXTENSION;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output_stream = new ObjectOutputStream(bytes)) {
+            output_stream.writeObject(replay);
+        } catch (IOException e) {
+            System.out.println("[Save] IO Error: " + e.getMessage());
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        byte[] serialized = bytes.toByteArray();
+        return PersistenceWriter.submit(null, () -> {
+            AtomicFile.write(new File(dir, file_name).getPath(), serialized);
+            return null;
+        });
+    }
+
+    /**
+     * Uses Object Streams to load a replay file. Returns null if the file cannot be read.
+     */
+    public static Replay load(File file) {
+        try (ObjectInputStream input_stream = new ObjectInputStream(
+            new ByteArrayInputStream(AtomicFile.read(file.getPath())))) {
+            return (Replay) input_stream.readObject();
+        } catch (FileNotFoundException e) {
+            System.out.println("[Load] FNF Error: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("[Load] IO Error: " + e.getMessage());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            System.out.println("[Load] CNF Error: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Returns all replay files of a folder.
+     */
+    public static List<File> get_all_files(String dir) {
+        File[] files = new File(dir).listFiles(
+            (folder, name) -> name.endsWith(REPLAY_EXTENSION));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(files));
+    }
+}
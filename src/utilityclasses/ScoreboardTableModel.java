@@ -0,0 +1,144 @@
+package src.utilityclasses;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model of the scoreboard which reads only the rows the table shows. Rows are loaded in
+ * pages of PAGE_SIZE entries from the leaderboard index and the last PAGES pages are kept, so a
+ * scoreboard of millions of games opens and scrolls without building all rows.
+ * <p>
+ * Rows are ranked by the index; there is no row sorter. The rows can be filtered by player,
+ * level and game mode, which is a query on the index as well.
+ */
+public class ScoreboardTableModel extends AbstractTableModel {
+
+    public static final int COLUMN_RANKING = 0;
+    public static final int COLUMN_PLAYER = 1;
+    public static final int COLUMN_POINTS = 2;
+    public static final int COLUMN_DATE = 3;
+    public static final int COLUMN_DIFFICULTY = 4;
+    public static final int COLUMN_LEVEL = 5;
+    public static final int COLUMN_GAME_MODE = 6;
+    private static final int PAGE_SIZE = 100;
+    private static final int PAGES = 8;
+
+    private final Leaderboard leaderboard;
+    private final String[] column_names;
+    private String player;
+    private String level;
+    private String game_mode;
+    private int row_count;
+    private final Map<Integer, List<LeaderboardEntry>> pages =
+        new LinkedHashMap<Integer, List<LeaderboardEntry>>(PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<LeaderboardEntry>> eldest) {
+                return size() > PAGES;
+            }
+        };
+
+    public ScoreboardTableModel(Leaderboard leaderboard, String[] column_names) {
+        this.leaderboard = leaderboard;
+        this.column_names = column_names;
+    }
+
+    /**
+     * Drops the loaded rows and counts the rows again, e.g. after a game was added.
+     */
+    public void refresh() {
+        pages.clear();
+        row_count = query().count();
+        fireTableDataChanged();
+    }
+
+    private LeaderboardQuery query() {
+        return leaderboard.query().player(player).level(level).mode(game_mode);
+    }
+
+    /**
+     * Shows only the rows with the value in the column, if the column can be filtered.
+     */
+    public void filter(int column, String value) {
+        switch (column) {
+            case COLUMN_PLAYER:
+                player = value;
+                break;
+            case COLUMN_LEVEL:
+                level = value;
+                break;
+            case COLUMN_GAME_MODE:
+                game_mode = value;
+                break;
+            default:
+                return;
+        }
+        refresh();
+    }
+
+    public boolean is_filterable(int column) {
+        return column == COLUMN_PLAYER || column == COLUMN_LEVEL || column == COLUMN_GAME_MODE;
+    }
+
+    /**
+     * Name of a column followed by its filter, if there is one.
+     */
+    public String get_title(int column) {
+        String value = null;
+        switch (column) {
+            case COLUMN_PLAYER:
+                value = player;
+                break;
+            case COLUMN_LEVEL:
+                value = level;
+                break;
+            case COLUMN_GAME_MODE:
+                value = game_mode;
+                break;
+        }
+        return (value == null) ? column_names[column] : column_names[column] + ": " + value;
+    }
+
+    @Override
+    public int getRowCount() {
+        return row_count;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return column_names.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return get_title(column);
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int page = row / PAGE_SIZE;
+        List<LeaderboardEntry> entries = pages.computeIfAbsent(page,
+            key -> query().page(key * PAGE_SIZE, PAGE_SIZE).get_entries());
+        if (row % PAGE_SIZE >= entries.size()) {
+            return "";
+        }
+        LeaderboardEntry entry = entries.get(row % PAGE_SIZE);
+        switch (column) {
+            case COLUMN_RANKING:
+                return String.valueOf(row + 1);
+            case COLUMN_PLAYER:
+                return entry.getPlayerName();
+            case COLUMN_POINTS:
+                return String.valueOf(entry.getScore());
+            case COLUMN_DATE:
+                return entry.getDate();
+            case COLUMN_DIFFICULTY:
+                return entry.getSpeedSetting();
+            case COLUMN_LEVEL:
+                return entry.getLevelName();
+            default:
+                return entry.getGameMode();
+        }
+    }
+}
@@ -1,28 +1,29 @@
 package src.utilityclasses;
 
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.concurrent.CompletableFuture;
 import src.gameclasses.Settings;
 
 /**
- * Object to store and load settings to 'settings.dat'.
+ * Object to store and load settings to 'settings.dat', which is replaced as an AtomicFile.
  */
 public class SettingsSerializer {
 
     private static final String LEVEL_FILE = "settings.dat";
-    private static ObjectOutputStream output_stream = null;
 
     /**
-     * Uses Object Streams to load the settings file 'settings.dat'.
+     * Uses Object Streams to load the settings file 'settings.dat', or its previous version if
+     * the last write did not finish.
      */
     public static Settings load_file() {
         Settings settings = null;
-        try {
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(LEVEL_FILE));
+        try (ObjectInputStream inputStream = new ObjectInputStream(
+            new ByteArrayInputStream(AtomicFile.read(LEVEL_FILE)))) {
             settings = (Settings) inputStream.readObject();
         } catch (FileNotFoundException e) {
             System.out.println("[Load] FNF Error: " + e.getMessage());
@@ -30,39 +31,30 @@ public class SettingsSerializer {
             System.out.println("[Load] IO Error: " + e.getMessage());
         } catch (ClassNotFoundException e) {
             System.out.println("[Load] CNF Error: " + e.getMessage());
-        } finally {
-            try {
-                if (output_stream != null) {
-                    output_stream.flush();
-                    output_stream.close();
-                }
-            } catch (IOException e) {
-                System.out.println("[Load] IO Error: " + e.getMessage());
-            }
         }
         return settings;
     }
 
     /**
-     * Uses Object Streams to store the settings file to 'settings.dat'.
+     * Uses Object Streams to store the settings file to 'settings.dat'. The settings are
+     * serialized at once and written by the PersistenceWriter; a later call before the write
+     * replaces it, so a burst of changes costs one fsync. The returned future completes when the
+     * settings are on the disk.
      */
-    public static void update_file(Settings settings) {
-        try {
-            output_stream = new ObjectOutputStream(new FileOutputStream(LEVEL_FILE));
+    public static CompletableFuture<Void> update_file(Settings settings) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output_stream = new ObjectOutputStream(bytes)) {
             output_stream.writeObject(settings);
-        } catch (FileNotFoundException e) {
-            System.out.println("[Update] FNF Error (program will create one): " + e.getMessage());
         } catch (IOException e) {
             System.out.println("[Update] IO Error: " + e.getMessage());
-        } finally {
-            try {
-                if (output_stream != null) {
-                    output_stream.flush();
-                    output_stream.close();
-                }
-            } catch (IOException e) {
-                System.out.println("[Update] Error: " + e.getMessage());
-            }
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
         }
+        byte[] serialized = bytes.toByteArray();
+        return PersistenceWriter.submit(LEVEL_FILE, () -> {
+            AtomicFile.write(LEVEL_FILE, serialized);
+            return null;
+        });
     }
-}
\ No newline at end of file
+}
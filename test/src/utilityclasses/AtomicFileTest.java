@@ -0,0 +1,155 @@
+package src.utilityclasses;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Recovery of AtomicFiles from the states a crash can leave: broken or missing files, the
+ * previous version '[name].1' and files of older versions without a header. Runs without a test
+ * framework:
+ * <pre>
+ * javac -d out $(find src test -name '*.java')
+ * cd $(mktemp -d) &amp;&amp; java -cp [project]/out src.utilityclasses.AtomicFileTest
+ * </pre>
+ * The files are written into the working directory. Throws an AssertionError on the first
+ * failed test.
+ */
+public class AtomicFileTest {
+
+    private static final String NAME = "atomic.dat";
+    private static final String PREVIOUS = NAME + ".1";
+
+    public static void main(String[] args) throws IOException {
+        write_and_read();
+        broken_file();
+        torn_file();
+        missing_file();
+        nothing_whole();
+        legacy_file();
+        System.out.println("[Test] AtomicFileTest passed");
+    }
+
+    private static void write_and_read() throws IOException {
+        clear();
+        AtomicFile.write(NAME, bytes("first"));
+        check(read().equals("first"), "first version");
+        AtomicFile.write(NAME, bytes("second"));
+        check(read().equals("second"), "second version");
+        check(new File(PREVIOUS).exists(), "previous version kept");
+    }
+
+    /**
+     * A file with a wrong checksum, e.g. from a disk error, falls back to the previous version.
+     */
+    private static void broken_file() throws IOException {
+        clear();
+        AtomicFile.write(NAME, bytes("first"));
+        AtomicFile.write(NAME, bytes("second"));
+        try (RandomAccessFile file = new RandomAccessFile(NAME, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 1);
+        }
+        check(read().equals("first"), "previous version of a broken file");
+        // the broken file is not kept as the previous version
+        AtomicFile.write(NAME, bytes("third"));
+        check(read().equals("third"), "written after a broken file");
+        new File(NAME).delete();
+        check(read().equals("first"), "previous version after a broken file");
+    }
+
+    /**
+     * A file cut short falls back to the previous version.
+     */
+    private static void torn_file() throws IOException {
+        clear();
+        AtomicFile.write(NAME, bytes("first"));
+        AtomicFile.write(NAME, bytes("second"));
+        try (RandomAccessFile file = new RandomAccessFile(NAME, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        check(read().equals("first"), "previous version of a torn file");
+    }
+
+    /**
+     * A crash between the two renames leaves only the previous version.
+     */
+    private static void missing_file() throws IOException {
+        clear();
+        AtomicFile.write(NAME, bytes("first"));
+        AtomicFile.write(NAME, bytes("second"));
+        new File(NAME).delete();
+        check(read().equals("first"), "previous version of a missing file");
+        clear();
+        try {
+            AtomicFile.read(NAME);
+            throw new AssertionError("read without a file");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+    }
+
+    private static void nothing_whole() throws IOException {
+        clear();
+        Files.write(new File(NAME).toPath(), bytes("not an atomic file"));
+        Files.write(new File(PREVIOUS).toPath(), new byte[3]);
+        try {
+            AtomicFile.read(NAME);
+            throw new AssertionError("read without a whole version");
+        } catch (FileNotFoundException e) {
+            throw new AssertionError("FileNotFoundException for broken files");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Java serialized files of older versions are read as they are and get a header on the next
+     * write, which takes the place of the legacy file.
+     */
+    private static void legacy_file() throws IOException {
+        clear();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output_stream = new ObjectOutputStream(bytes)) {
+            output_stream.writeObject("legacy");
+        }
+        byte[] legacy = bytes.toByteArray();
+        Files.write(new File(NAME).toPath(), legacy);
+        check(Arrays.equals(AtomicFile.read(NAME), legacy), "legacy file");
+        AtomicFile.write(NAME, bytes("new"));
+        check(read().equals("new"), "written after a legacy file");
+        check(Arrays.equals(Files.readAllBytes(new File(PREVIOUS).toPath()), legacy),
+            "legacy file kept as the previous version");
+        new File(NAME).delete();
+        check(Arrays.equals(AtomicFile.read(NAME), legacy), "legacy previous version");
+        clear();
+    }
+
+    private static String read() throws IOException {
+        return new String(AtomicFile.read(NAME), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void clear() {
+        new File(NAME).delete();
+        new File(PREVIOUS).delete();
+        new File(NAME + ".tmp").delete();
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
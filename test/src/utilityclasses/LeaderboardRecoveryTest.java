@@ -0,0 +1,155 @@
+package src.utilityclasses;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Crash recovery of the leaderboard files: files as a crash can leave them are written into the
+ * working directory and read by a new Leaderboard. Runs without a test framework:
+ * <pre>
+ * javac -d out $(find src test -name '*.java')
+ * cd $(mktemp -d) &amp;&amp; java -cp [project]/out src.utilityclasses.LeaderboardRecoveryTest
+ * </pre>
+ * The leaderboard reads its files only once per process, so all cases are set up in one
+ * directory, which must not hold leaderboard files:
+ * <ul>
+ * <li>a snapshot of generation 2 with a broken record, next to the journals 1 and 2, which it
+ * contains already but which were not deleted yet,</li>
+ * <li>the current journal 3 with a broken record in the middle, followed by a whole one, and a
+ * record at the end which was only written in part.</li>
+ * </ul>
+ * The journal is then filled, so the next snapshot merges the files.
+ * Throws an AssertionError on the first failed test.
+ */
+public class LeaderboardRecoveryTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException,
+        ExecutionException {
+        check(new File(".").list().length == 0, "the working directory is not empty");
+        List<LeaderboardEntry> snapshot = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            snapshot.add(entry("snapshot" + i, 100 - i));
+        }
+        write_file("lb.snapshot", 2, snapshot, 2);
+        // merged into the snapshot, but the crash came before they were deleted
+        write_file("lb.1.journal", 1, snapshot.subList(0, 3), -1);
+        write_file("lb.2.journal", 2, snapshot.subList(3, 5), -1);
+        snapshot.remove(2);
+
+        LeaderboardEntry first = entry("first", 50);
+        LeaderboardEntry broken = entry("broken", 40);
+        LeaderboardEntry whole = entry("whole", 30);
+        LeaderboardEntry torn = entry("torn", 20);
+        byte[] broken_record = LeaderboardCodec.encode(broken);
+        broken_record[LeaderboardCodec.SCORE] ^= 1;
+        byte[] torn_record = LeaderboardCodec.encode(torn);
+        ByteArrayOutputStream journal = new ByteArrayOutputStream();
+        LeaderboardCodec.write_file_header(new DataOutputStream(journal), 3);
+        journal.write(LeaderboardCodec.encode(first));
+        journal.write(broken_record);
+        journal.write(LeaderboardCodec.encode(whole));
+        long whole_end = journal.size();
+        journal.write(torn_record, 0, torn_record.length / 2);
+        try (FileOutputStream output_stream = new FileOutputStream("lb.3.journal")) {
+            output_stream.write(journal.toByteArray());
+        }
+
+        Leaderboard leaderboard = new Leaderboard();
+        List<String> players = players(leaderboard.get_lb_list());
+        List<String> expected = new ArrayList<>(players(snapshot));
+        expected.addAll(Arrays.asList("first", "whole"));
+        check(players.equals(expected), "entries " + players + " instead of " + expected);
+        check(new File("lb.3.journal").length() == whole_end,
+            "torn record not cut, journal has " + new File("lb.3.journal").length() + " bytes");
+
+        // new entries follow the whole records; the broken one is still skipped
+        leaderboard.add_entry("after", 10, "19/10/2026 12:00", "5", "Level", "Default").get();
+        List<String> journal_players = players(read_file("lb.3.journal"));
+        check(journal_players.equals(Arrays.asList("first", "whole", "after")),
+            "journal " + journal_players);
+
+        // the journal is full after 1024 records, the snapshot thread then merges it
+        for (int i = journal_players.size() + 1; i < 1024; i++) {
+            leaderboard.add_entry("filler", 0, "19/10/2026 12:00", "5", "Level", "Default");
+        }
+        PersistenceWriter.flush().get();
+        for (int wait = 0; wait < 100 && new File("lb.3.journal").exists(); wait++) {
+            Thread.sleep(100);
+        }
+        for (String journal_name : new String[]{"lb.1.journal", "lb.2.journal", "lb.3.journal"}) {
+            check(!new File(journal_name).exists(), journal_name + " not deleted");
+        }
+        List<LeaderboardEntry> merged = read_file("lb.snapshot");
+        expected.add("after");
+        check(merged.size() == expected.size() + 1024 - journal_players.size() - 1,
+            "snapshot has " + merged.size() + " entries");
+        check(players(merged.subList(0, expected.size())).equals(expected),
+            "snapshot starts with " + players(merged.subList(0, expected.size())));
+        System.out.println("[Test] LeaderboardRecoveryTest passed");
+    }
+
+    private static LeaderboardEntry entry(String player, int score) {
+        return new LeaderboardEntry(player, score, "19/10/2026 11:00", "5", "Level", "Default");
+    }
+
+    /**
+     * Writes a snapshot or journal whose record at the index broken has a wrong checksum.
+     */
+    private static void write_file(String file_name, long generation,
+        List<LeaderboardEntry> entries, int broken) throws IOException {
+        try (DataOutputStream output_stream = new DataOutputStream(
+            new FileOutputStream(file_name))) {
+            LeaderboardCodec.write_file_header(output_stream, generation);
+            for (int i = 0; i < entries.size(); i++) {
+                byte[] record = LeaderboardCodec.encode(entries.get(i));
+                if (i == broken) {
+                    record[LeaderboardCodec.SCORE] ^= 1;
+                }
+                output_stream.write(record);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole records of a file, skipping those with a wrong checksum.
+     */
+    private static List<LeaderboardEntry> read_file(String file_name) throws IOException {
+        List<LeaderboardEntry> entries = new ArrayList<>();
+        try (DataInputStream input_stream = new DataInputStream(
+            new FileInputStream(file_name))) {
+            LeaderboardCodec.read_file_header(input_stream);
+            byte[] record;
+            while ((record = LeaderboardCodec.read_record(input_stream)) != null) {
+                try {
+                    entries.add(LeaderboardCodec.decode(record, 0));
+                } catch (IOException e) {
+                    // broken record
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static List<String> players(List<LeaderboardEntry> entries) {
+        List<String> players = new ArrayList<>();
+        for (LeaderboardEntry entry : entries) {
+            players.add(entry.getPlayerName());
+        }
+        return players;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package src.utilityclasses;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import src.gameclasses.Level;
+
+/**
+ * Round trip tests of the binary level format (LevelCodec) and of the conversion of version 1
+ * files by LevelSerializer. Runs without a test framework:
+ * <pre>
+ * javac -d out $(find src test -name '*.java')
+ * cd $(mktemp -d) &amp;&amp; java -cp [project]/out src.utilityclasses.LevelCodecTest
+ * </pre>
+ * The conversion test writes 'levels.bin' into the working directory, which must not hold level
+ * files. Throws an AssertionError on the first failed test.
+ */
+public class LevelCodecTest {
+
+    public static void main(String[] args) throws IOException {
+        header_round_trip();
+        cells_round_trip();
+        broken_cells();
+        record_round_trip();
+        broken_records();
+        version_1_conversion();
+        System.out.println("[Test] LevelCodecTest passed");
+    }
+
+    private static void header_round_trip() throws IOException {
+        for (String name : new String[]{"Spiral \u00fc", null}) {
+            Level level = level(new Random(1), 30, 20, name);
+            level.modifiable = false;
+            level.direction = 3;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            LevelCodec.write_level(new DataOutputStream(bytes), "identifier", level);
+            LevelCodec.Header header = LevelCodec.read_header(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            check(header.identifier.equals("identifier"), "identifier");
+            check(same(header.name, name), "name " + name);
+            check(header.width == 30 && header.height == 20, "size");
+            check(header.head_x == level.head[0] && header.head_y == level.head[1], "head");
+            check(header.tail_x == level.tail[0] && header.tail_y == level.tail[1], "tail");
+            check(header.direction == 3 && !header.modifiable, "direction and modifiable");
+            check(header.cells_length == LevelCodec.encode_cells(level.game_board).length,
+                "cells length");
+        }
+    }
+
+    private static void cells_round_trip() throws IOException {
+        Random random = new Random(2);
+        int[][] sizes = {{1, 1}, {5, 3}, {40, 30}, {300, 200}};
+        for (int[] size : sizes) {
+            Integer[][] board = level(random, size[0], size[1], null).game_board;
+            Integer[][] decoded = LevelCodec.decode_cells(LevelCodec.encode_cells(board),
+                size[0], size[1]);
+            check(Arrays.deepEquals(board, decoded), "cells of " + size[0] + "x" + size[1]);
+        }
+        // a single run longer than a varint byte holds
+        Integer[][] empty = new Integer[200][300];
+        for (Integer[] row : empty) {
+            Arrays.fill(row, 0);
+        }
+        byte[] cells = LevelCodec.encode_cells(empty);
+        check(cells.length == 4, "one run of 60000 cells in " + cells.length + " bytes");
+        check(Arrays.deepEquals(empty, LevelCodec.decode_cells(cells, 300, 200)), "long run");
+    }
+
+    private static void broken_cells() {
+        Integer[][] board = level(new Random(3), 10, 10, null).game_board;
+        byte[] cells = LevelCodec.encode_cells(board);
+        expect_io_exception(() -> LevelCodec.decode_cells(
+            Arrays.copyOf(cells, cells.length - 1), 10, 10), "truncated cells");
+        expect_io_exception(() -> LevelCodec.decode_cells(cells, 10, 9), "too many cells");
+        expect_io_exception(() -> LevelCodec.decode_cells(cells, 10, 11), "missing cells");
+    }
+
+    private static void record_round_trip() throws IOException {
+        Level level = level(new Random(4), 25, 25, "Record");
+        LevelCodec.Header header = LevelCodec.Header.of("record", level);
+        byte[] record = LevelCodec.put_record(header, LevelCodec.encode_cells(level.game_board));
+        LevelCodec.Record read = LevelCodec.read_record(
+            new DataInputStream(new ByteArrayInputStream(record)), record.length);
+        check(read.type == LevelCodec.RECORD_PUT, "record type");
+        check(read.length() == record.length, "record length");
+        LevelCodec.Entry entry = LevelCodec.read_level(
+            new DataInputStream(new ByteArrayInputStream(read.payload)));
+        check(entry.identifier.equals("record"), "record identifier");
+        check_level(level, entry.level, "record");
+
+        // a level without its snake cells refers to a board record
+        Integer[][] board = LevelCodec.remove_snake(header, level.game_board);
+        check(board[level.head[1]][level.head[0]] == 0 && header.snake_mask == 3, "snake mask");
+        byte[] board_cells = LevelCodec.encode_cells(board);
+        long hash = LevelCodec.board_hash(25, 25, board_cells);
+        header.board_hash = hash;
+        byte[] board_record = LevelCodec.board_record(hash, 25, 25, board_cells);
+        LevelCodec.Record read_board = LevelCodec.read_record(
+            new DataInputStream(new ByteArrayInputStream(board_record)), board_record.length);
+        LevelCodec.Board shared = LevelCodec.read_board(
+            new DataInputStream(new ByteArrayInputStream(read_board.payload)),
+            read_board.payload.length);
+        check(shared.hash == hash && shared.width == 25 && shared.height == 25, "board");
+        byte[] ref_record = LevelCodec.put_ref_record(header);
+        LevelCodec.Record read_ref = LevelCodec.read_record(
+            new DataInputStream(new ByteArrayInputStream(ref_record)), ref_record.length);
+        LevelCodec.Header ref = LevelCodec.read_ref_header(
+            new DataInputStream(new ByteArrayInputStream(read_ref.payload)));
+        check(ref.board_hash == hash && ref.snake_mask == 3, "reference");
+        int cells_start = read_board.payload.length - shared.cells_length;
+        Integer[][] restored = LevelCodec.decode_cells(Arrays.copyOfRange(read_board.payload,
+            cells_start, read_board.payload.length), 25, 25);
+        ref.add_snake(restored);
+        check(Arrays.deepEquals(level.game_board, restored), "board with snake");
+    }
+
+    private static void broken_records() throws IOException {
+        Level level = level(new Random(5), 8, 8, "Broken");
+        byte[] record = LevelCodec.put_record(LevelCodec.Header.of("broken", level),
+            LevelCodec.encode_cells(level.game_board));
+        byte[] changed = record.clone();
+        changed[changed.length / 2] ^= 1;
+        try {
+            LevelCodec.read_record(new DataInputStream(new ByteArrayInputStream(changed)),
+                changed.length);
+            throw new AssertionError("changed record was read");
+        } catch (LevelCodec.ChecksumException e) {
+            check(e.length == record.length, "length of the broken record");
+        }
+        byte[] torn = Arrays.copyOf(record, record.length - 3);
+        try {
+            LevelCodec.read_record(new DataInputStream(new ByteArrayInputStream(torn)),
+                torn.length);
+            throw new AssertionError("torn record was read");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Writes a 'levels.bin' of version 1 and checks that LevelSerializer converts it into
+     * records with the same levels.
+     */
+    private static void version_1_conversion() throws IOException {
+        check(!new File("levels.bin").exists() && !new File("levels.dat").exists(),
+            "the working directory holds level files");
+        Random random = new Random(6);
+        Map<String, Level> levels = new LinkedHashMap<>();
+        levels.put("first", level(random, 20, 15, "First"));
+        levels.put("second", level(random, 20, 15, null));
+        levels.put("third", level(random, 64, 48, "Third"));
+        try (DataOutputStream output_stream = new DataOutputStream(
+            new FileOutputStream("levels.bin"))) {
+            output_stream.writeInt(LevelCodec.MAGIC);
+            output_stream.writeShort(LevelCodec.VERSION_WITHOUT_RECORDS);
+            output_stream.writeInt(levels.size());
+            for (Map.Entry<String, Level> entry : levels.entrySet()) {
+                LevelCodec.write_level(output_stream, entry.getKey(), entry.getValue());
+            }
+        }
+        try {
+            Map<String, Level> converted = LevelSerializer.get_all_levels();
+            check(converted.keySet().equals(levels.keySet()), "converted identifiers");
+            for (Map.Entry<String, Level> entry : levels.entrySet()) {
+                check_level(entry.getValue(), converted.get(entry.getKey()), entry.getKey());
+            }
+            try (DataInputStream input_stream = new DataInputStream(
+                new FileInputStream("levels.bin"))) {
+                check(LevelCodec.read_file_header(input_stream) == LevelCodec.VERSION,
+                    "converted file version");
+            }
+        } finally {
+            new File("levels.bin").delete();
+        }
+    }
+
+    /**
+     * Level of walls (2), free cells (0) and apples (3) with the snake (1) at head and tail.
+     */
+    private static Level level(Random random, int width, int height, String name) {
+        Integer[][] board = new Integer[height][width];
+        for (Integer[] row : board) {
+            for (int x = 0; x < width; x++) {
+                int cell = random.nextInt(10);
+                row[x] = (cell == 0) ? 2 : (cell == 1) ? 3 : 0;
+            }
+        }
+        Integer[] head = {width / 2, height / 2};
+        Integer[] tail = {Math.max(0, width / 2 - 1), height / 2};
+        board[head[1]][head[0]] = 1;
+        board[tail[1]][tail[0]] = 1;
+        return new Level(board, head, tail, true, 1, name);
+    }
+
+    private static void check_level(Level expected, Level actual, String what) {
+        check(actual != null, what + " missing");
+        check(Arrays.deepEquals(expected.game_board, actual.game_board), what + " board");
+        check(Arrays.equals(expected.head, actual.head), what + " head");
+        check(Arrays.equals(expected.tail, actual.tail), what + " tail");
+        check(expected.direction.equals(actual.direction), what + " direction");
+        check(expected.modifiable.equals(actual.modifiable), what + " modifiable");
+        check(same(expected.name, actual.name), what + " name");
+    }
+
+    private interface Decoding {
+
+        void run() throws IOException;
+    }
+
+    private static void expect_io_exception(Decoding decoding, String what) {
+        try {
+            decoding.run();
+        } catch (IOException e) {
+            return;
+        }
+        throw new AssertionError("no IOException: " + what);
+    }
+
+    private static boolean same(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}